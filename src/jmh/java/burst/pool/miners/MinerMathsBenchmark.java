@@ -0,0 +1,75 @@
+package burst.pool.miners;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Capacity estimation of all miners, as done by {@link MinerTracker} on every processed block,
+ * per miner and in one batch pass.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MinerMathsBenchmark {
+    private static final int N_AVG = 360;
+    private static final int PROCESS_LAG = 10;
+
+    @Param({"1000", "10000", "100000"})
+    private int miners;
+
+    private MinerMaths minerMaths;
+    private int[] nConfs;
+    private double[] hitSums;
+    private double[] plotSizes;
+
+    @Setup
+    public void setUp() {
+        minerMaths = new MinerMaths(N_AVG + PROCESS_LAG, 1, 0);
+        nConfs = new int[miners];
+        hitSums = new double[miners];
+        plotSizes = new double[miners];
+        Random random = new Random(42);
+        for (int i = 0; i < miners; i++) {
+            nConfs[i] = random.nextInt(N_AVG + PROCESS_LAG + 1);
+            // Around a base target of a few TiB network times a deadline of up to a day
+            hitSums[i] = nConfs[i] * (double) (random.nextInt(50_000_000) + 1) * (random.nextInt(86_400) + 1);
+        }
+    }
+
+    @Benchmark
+    public double[] estimatedTotalPlotSize() {
+        for (int i = 0; i < miners; i++) {
+            plotSizes[i] = minerMaths.estimatedTotalPlotSize(nConfs[i], hitSums[i]);
+        }
+        return plotSizes;
+    }
+
+    @Benchmark
+    public double[] estimatedEffectivePlotSize() {
+        for (int i = 0; i < miners; i++) {
+            plotSizes[i] = minerMaths.estimatedEffectivePlotSize(nConfs[i], hitSums[i]);
+        }
+        return plotSizes;
+    }
+
+    @Benchmark
+    public double[] estimatedTotalPlotSizes() {
+        minerMaths.estimatedTotalPlotSizes(nConfs, hitSums, plotSizes);
+        return plotSizes;
+    }
+
+    @Benchmark
+    public double[] estimatedEffectivePlotSizes() {
+        minerMaths.estimatedEffectivePlotSizes(nConfs, hitSums, plotSizes);
+        return plotSizes;
+    }
+}
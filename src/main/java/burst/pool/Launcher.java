@@ -2,6 +2,7 @@ package burst.pool;
 
 import signumj.service.NodeService;
 import signumj.util.SignumUtils;
+import burst.pool.miners.DeadlineHistory;
 import burst.pool.miners.MinerMaths;
 import burst.pool.miners.MinerTracker;
 import burst.pool.pool.Pool;
@@ -44,19 +45,29 @@ public class Launcher {
         
         MinerMaths minerMaths = new MinerMaths(propertyService.getInt(Props.nAvg) + propertyService.getInt(Props.processLag),
                 propertyService.getInt(Props.nMin), propertyService.getInt(Props.graceDeadlines));
+        // Room for nAvg processed blocks plus the ones still waiting the process lag, it grows if processing falls further behind
+        DeadlineHistory deadlineHistory = new DeadlineHistory(propertyService.getInt(Props.nAvg) + 2 * propertyService.getInt(Props.processLag),
+                propertyService.getBoolean(Props.verifyHitSums));
         NodeService nodeService = NodeService.getUseBestInstance(true, Constants.USER_AGENT, propertyService.getStringList(Props.nodeAddresses));
         StorageService storageService = null;
         try {
-            storageService = new DbStorageService(propertyService, minerMaths, nodeService);
+            storageService = new DbStorageService(propertyService, deadlineHistory, nodeService);
         } catch (SQLException | FlywayException e) {
             logger.error("Could not open database connection", e);
             System.exit(-1);
         }
-        MinerTracker minerTracker = new MinerTracker(nodeService, propertyService);
-        Pool pool = new Pool(nodeService, storageService, propertyService, minerTracker);
-        Server server = new Server(storageService, propertyService, pool);
+        MinerTracker minerTracker = new MinerTracker(nodeService, propertyService, minerMaths);
+        Pool pool = new Pool(nodeService, storageService, propertyService, minerTracker, deadlineHistory);
+        int serverPort = propertyService.getInt(Props.serverPort);
+        int miningPort = propertyService.getInt(Props.miningPort);
         try {
-            server.start(NanoHTTPD.SOCKET_READ_TIMEOUT, false);
+            if (miningPort == 0 || miningPort == serverPort) {
+                new Server(storageService, propertyService, pool).start(NanoHTTPD.SOCKET_READ_TIMEOUT, false);
+            } else {
+                // Idle keep-alive miners give their worker thread back sooner than on the web port
+                new Server(storageService, propertyService, pool, miningPort, true, false).start(propertyService.getInt(Props.miningReadTimeout), false);
+                new Server(storageService, propertyService, pool, serverPort, false, true).start(NanoHTTPD.SOCKET_READ_TIMEOUT, false);
+            }
         } catch (IOException e) {
             logger.error("Could not start server", e);
             System.exit(-1);
@@ -6,6 +6,7 @@ package burst.pool.db;
 
 import burst.pool.db.tables.BestSubmissions;
 import burst.pool.db.tables.FlywaySchemaHistory;
+import burst.pool.db.tables.MinerCommands;
 import burst.pool.db.tables.MinerDeadlines;
 import burst.pool.db.tables.Miners;
 import burst.pool.db.tables.Payouts;
@@ -58,6 +59,11 @@ public class DefaultSchema extends SchemaImpl {
      */
     public final Miners MINERS = burst.pool.db.tables.Miners.MINERS;
 
+    /**
+     * The table <code>miner_commands</code>.
+     */
+    public final MinerCommands MINER_COMMANDS = burst.pool.db.tables.MinerCommands.MINER_COMMANDS;
+
     /**
      * The table <code>miner_deadlines</code>.
      */
@@ -106,6 +112,7 @@ public class DefaultSchema extends SchemaImpl {
             BestSubmissions.BEST_SUBMISSIONS,
             FlywaySchemaHistory.FLYWAY_SCHEMA_HISTORY,
             Miners.MINERS,
+            MinerCommands.MINER_COMMANDS,
             MinerDeadlines.MINER_DEADLINES,
             Payouts.PAYOUTS,
             PoolState.POOL_STATE,
@@ -7,6 +7,7 @@ package burst.pool.db;
 import burst.pool.db.tables.BestSubmissions;
 import burst.pool.db.tables.FlywaySchemaHistory;
 import burst.pool.db.tables.MinerDeadlines;
+import burst.pool.db.tables.MinerCommands;
 import burst.pool.db.tables.Miners;
 import burst.pool.db.tables.Payouts;
 import burst.pool.db.tables.PoolState;
@@ -42,6 +43,9 @@ public class Indexes {
     public static final Index FLYWAY_SCHEMA_HISTORY_PRIMARY = Indexes0.FLYWAY_SCHEMA_HISTORY_PRIMARY;
     public static final Index MINERS_MINERS_INDEX = Indexes0.MINERS_MINERS_INDEX;
     public static final Index MINERS_PRIMARY = Indexes0.MINERS_PRIMARY;
+    public static final Index MINER_COMMANDS_MINER_COMMANDS_INDEX = Indexes0.MINER_COMMANDS_MINER_COMMANDS_INDEX;
+    public static final Index MINER_COMMANDS_PRIMARY = Indexes0.MINER_COMMANDS_PRIMARY;
+    public static final Index MINER_COMMANDS_MINER_COMMANDS_TRANSACTION_INDEX = Indexes0.MINER_COMMANDS_MINER_COMMANDS_TRANSACTION_INDEX;
     public static final Index MINER_DEADLINES_MINER_DEADLINES_INDEX = Indexes0.MINER_DEADLINES_MINER_DEADLINES_INDEX;
     public static final Index MINER_DEADLINES_PRIMARY = Indexes0.MINER_DEADLINES_PRIMARY;
     public static final Index PAYOUTS_PAYOUTS_INDEX = Indexes0.PAYOUTS_PAYOUTS_INDEX;
@@ -62,6 +66,9 @@ public class Indexes {
         public static Index FLYWAY_SCHEMA_HISTORY_PRIMARY = Internal.createIndex("PRIMARY", FlywaySchemaHistory.FLYWAY_SCHEMA_HISTORY, new OrderField[] { FlywaySchemaHistory.FLYWAY_SCHEMA_HISTORY.INSTALLED_RANK }, true);
         public static Index MINERS_MINERS_INDEX = Internal.createIndex("miners_index", Miners.MINERS, new OrderField[] { Miners.MINERS.ACCOUNT_ID }, true);
         public static Index MINERS_PRIMARY = Internal.createIndex("PRIMARY", Miners.MINERS, new OrderField[] { Miners.MINERS.DB_ID }, true);
+        public static Index MINER_COMMANDS_MINER_COMMANDS_INDEX = Internal.createIndex("miner_commands_index", MinerCommands.MINER_COMMANDS, new OrderField[] { MinerCommands.MINER_COMMANDS.ACCOUNT_ID }, false);
+        public static Index MINER_COMMANDS_PRIMARY = Internal.createIndex("PRIMARY", MinerCommands.MINER_COMMANDS, new OrderField[] { MinerCommands.MINER_COMMANDS.DB_ID }, true);
+        public static Index MINER_COMMANDS_MINER_COMMANDS_TRANSACTION_INDEX = Internal.createIndex("miner_commands_transaction_index", MinerCommands.MINER_COMMANDS, new OrderField[] { MinerCommands.MINER_COMMANDS.TRANSACTION_ID, MinerCommands.MINER_COMMANDS.COMMAND }, true);
         public static Index MINER_DEADLINES_MINER_DEADLINES_INDEX = Internal.createIndex("miner_deadlines_index", MinerDeadlines.MINER_DEADLINES, new OrderField[] { MinerDeadlines.MINER_DEADLINES.ACCOUNT_ID, MinerDeadlines.MINER_DEADLINES.HEIGHT }, true);
         public static Index MINER_DEADLINES_PRIMARY = Internal.createIndex("PRIMARY", MinerDeadlines.MINER_DEADLINES, new OrderField[] { MinerDeadlines.MINER_DEADLINES.DB_ID }, true);
         public static Index PAYOUTS_PAYOUTS_INDEX = Internal.createIndex("payouts_index", Payouts.PAYOUTS, new OrderField[] { Payouts.PAYOUTS.TRANSACTION_ID }, true);
@@ -7,6 +7,7 @@ package burst.pool.db;
 import burst.pool.db.tables.BestSubmissions;
 import burst.pool.db.tables.FlywaySchemaHistory;
 import burst.pool.db.tables.MinerDeadlines;
+import burst.pool.db.tables.MinerCommands;
 import burst.pool.db.tables.Miners;
 import burst.pool.db.tables.Payouts;
 import burst.pool.db.tables.PoolState;
@@ -14,6 +15,7 @@ import burst.pool.db.tables.WonBlocks;
 import burst.pool.db.tables.records.BestSubmissionsRecord;
 import burst.pool.db.tables.records.FlywaySchemaHistoryRecord;
 import burst.pool.db.tables.records.MinerDeadlinesRecord;
+import burst.pool.db.tables.records.MinerCommandsRecord;
 import burst.pool.db.tables.records.MinersRecord;
 import burst.pool.db.tables.records.PayoutsRecord;
 import burst.pool.db.tables.records.PoolStateRecord;
@@ -46,6 +48,7 @@ public class Keys {
 
     public static final Identity<BestSubmissionsRecord, Long> IDENTITY_BEST_SUBMISSIONS = Identities0.IDENTITY_BEST_SUBMISSIONS;
     public static final Identity<MinersRecord, Long> IDENTITY_MINERS = Identities0.IDENTITY_MINERS;
+    public static final Identity<MinerCommandsRecord, Long> IDENTITY_MINER_COMMANDS = Identities0.IDENTITY_MINER_COMMANDS;
     public static final Identity<MinerDeadlinesRecord, Long> IDENTITY_MINER_DEADLINES = Identities0.IDENTITY_MINER_DEADLINES;
     public static final Identity<PayoutsRecord, Long> IDENTITY_PAYOUTS = Identities0.IDENTITY_PAYOUTS;
     public static final Identity<WonBlocksRecord, Long> IDENTITY_WON_BLOCKS = Identities0.IDENTITY_WON_BLOCKS;
@@ -58,6 +61,8 @@ public class Keys {
     public static final UniqueKey<FlywaySchemaHistoryRecord> KEY_FLYWAY_SCHEMA_HISTORY_PRIMARY = UniqueKeys0.KEY_FLYWAY_SCHEMA_HISTORY_PRIMARY;
     public static final UniqueKey<MinersRecord> KEY_MINERS_PRIMARY = UniqueKeys0.KEY_MINERS_PRIMARY;
     public static final UniqueKey<MinersRecord> KEY_MINERS_MINERS_INDEX = UniqueKeys0.KEY_MINERS_MINERS_INDEX;
+    public static final UniqueKey<MinerCommandsRecord> KEY_MINER_COMMANDS_PRIMARY = UniqueKeys0.KEY_MINER_COMMANDS_PRIMARY;
+    public static final UniqueKey<MinerCommandsRecord> KEY_MINER_COMMANDS_MINER_COMMANDS_TRANSACTION_INDEX = UniqueKeys0.KEY_MINER_COMMANDS_MINER_COMMANDS_TRANSACTION_INDEX;
     public static final UniqueKey<MinerDeadlinesRecord> KEY_MINER_DEADLINES_PRIMARY = UniqueKeys0.KEY_MINER_DEADLINES_PRIMARY;
     public static final UniqueKey<MinerDeadlinesRecord> KEY_MINER_DEADLINES_MINER_DEADLINES_INDEX = UniqueKeys0.KEY_MINER_DEADLINES_MINER_DEADLINES_INDEX;
     public static final UniqueKey<PayoutsRecord> KEY_PAYOUTS_PRIMARY = UniqueKeys0.KEY_PAYOUTS_PRIMARY;
@@ -79,6 +84,7 @@ public class Keys {
     private static class Identities0 {
         public static Identity<BestSubmissionsRecord, Long> IDENTITY_BEST_SUBMISSIONS = Internal.createIdentity(BestSubmissions.BEST_SUBMISSIONS, BestSubmissions.BEST_SUBMISSIONS.DB_ID);
         public static Identity<MinersRecord, Long> IDENTITY_MINERS = Internal.createIdentity(Miners.MINERS, Miners.MINERS.DB_ID);
+        public static Identity<MinerCommandsRecord, Long> IDENTITY_MINER_COMMANDS = Internal.createIdentity(MinerCommands.MINER_COMMANDS, MinerCommands.MINER_COMMANDS.DB_ID);
         public static Identity<MinerDeadlinesRecord, Long> IDENTITY_MINER_DEADLINES = Internal.createIdentity(MinerDeadlines.MINER_DEADLINES, MinerDeadlines.MINER_DEADLINES.DB_ID);
         public static Identity<PayoutsRecord, Long> IDENTITY_PAYOUTS = Internal.createIdentity(Payouts.PAYOUTS, Payouts.PAYOUTS.DB_ID);
         public static Identity<WonBlocksRecord, Long> IDENTITY_WON_BLOCKS = Internal.createIdentity(WonBlocks.WON_BLOCKS, WonBlocks.WON_BLOCKS.DB_ID);
@@ -89,6 +95,8 @@ public class Keys {
         public static final UniqueKey<FlywaySchemaHistoryRecord> KEY_FLYWAY_SCHEMA_HISTORY_PRIMARY = Internal.createUniqueKey(FlywaySchemaHistory.FLYWAY_SCHEMA_HISTORY, "KEY_flyway_schema_history_PRIMARY", FlywaySchemaHistory.FLYWAY_SCHEMA_HISTORY.INSTALLED_RANK);
         public static final UniqueKey<MinersRecord> KEY_MINERS_PRIMARY = Internal.createUniqueKey(Miners.MINERS, "KEY_miners_PRIMARY", Miners.MINERS.DB_ID);
         public static final UniqueKey<MinersRecord> KEY_MINERS_MINERS_INDEX = Internal.createUniqueKey(Miners.MINERS, "KEY_miners_miners_index", Miners.MINERS.ACCOUNT_ID);
+        public static final UniqueKey<MinerCommandsRecord> KEY_MINER_COMMANDS_PRIMARY = Internal.createUniqueKey(MinerCommands.MINER_COMMANDS, "KEY_miner_commands_PRIMARY", MinerCommands.MINER_COMMANDS.DB_ID);
+        public static final UniqueKey<MinerCommandsRecord> KEY_MINER_COMMANDS_MINER_COMMANDS_TRANSACTION_INDEX = Internal.createUniqueKey(MinerCommands.MINER_COMMANDS, "KEY_miner_commands_miner_commands_transaction_index", MinerCommands.MINER_COMMANDS.TRANSACTION_ID, MinerCommands.MINER_COMMANDS.COMMAND);
         public static final UniqueKey<MinerDeadlinesRecord> KEY_MINER_DEADLINES_PRIMARY = Internal.createUniqueKey(MinerDeadlines.MINER_DEADLINES, "KEY_miner_deadlines_PRIMARY", MinerDeadlines.MINER_DEADLINES.DB_ID);
         public static final UniqueKey<MinerDeadlinesRecord> KEY_MINER_DEADLINES_MINER_DEADLINES_INDEX = Internal.createUniqueKey(MinerDeadlines.MINER_DEADLINES, "KEY_miner_deadlines_miner_deadlines_index", MinerDeadlines.MINER_DEADLINES.ACCOUNT_ID, MinerDeadlines.MINER_DEADLINES.HEIGHT);
         public static final UniqueKey<PayoutsRecord> KEY_PAYOUTS_PRIMARY = Internal.createUniqueKey(Payouts.PAYOUTS, "KEY_payouts_PRIMARY", Payouts.PAYOUTS.DB_ID);
@@ -6,6 +6,7 @@ package burst.pool.db;
 
 import burst.pool.db.tables.BestSubmissions;
 import burst.pool.db.tables.FlywaySchemaHistory;
+import burst.pool.db.tables.MinerCommands;
 import burst.pool.db.tables.MinerDeadlines;
 import burst.pool.db.tables.Miners;
 import burst.pool.db.tables.Payouts;
@@ -43,6 +44,11 @@ public class Tables {
      */
     public static final Miners MINERS = burst.pool.db.tables.Miners.MINERS;
 
+    /**
+     * The table <code>miner_commands</code>.
+     */
+    public static final MinerCommands MINER_COMMANDS = burst.pool.db.tables.MinerCommands.MINER_COMMANDS;
+
     /**
      * The table <code>miner_deadlines</code>.
      */
@@ -0,0 +1,43 @@
+package burst.pool.entity;
+
+import signumj.entity.SignumAddress;
+import signumj.entity.SignumID;
+
+public class MinerCommand {
+    // The size of the argument column, longer arguments are not valid
+    public static final int MAX_ARGUMENT_LENGTH = 64;
+
+    private final SignumID transactionId;
+    private final SignumAddress miner;
+    private final int height;
+    private final String command;
+    private final String argument;
+
+    public MinerCommand(SignumID transactionId, SignumAddress miner, int height, String command, String argument) {
+        this.transactionId = transactionId;
+        this.miner = miner;
+        this.height = height;
+        this.command = command;
+        this.argument = argument;
+    }
+
+    public SignumID getTransactionId() {
+        return transactionId;
+    }
+
+    public SignumAddress getMiner() {
+        return miner;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public String getArgument() {
+        return argument;
+    }
+}
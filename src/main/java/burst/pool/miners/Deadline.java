@@ -1,16 +1,14 @@
 package burst.pool.miners;
 
-import java.math.BigInteger;
-
 public class Deadline {
-    private final BigInteger deadline;
-    private final BigInteger baseTarget;
+    private final long deadline;
+    private final long baseTarget;
     private final int sharePercent;
     private final long height;
     private final double boost;
     private double boostPool;
 
-    public Deadline(BigInteger deadline, BigInteger baseTarget, int sharePercent, long height, double boost, double boostPool) {
+    public Deadline(long deadline, long baseTarget, int sharePercent, long height, double boost, double boostPool) {
         this.deadline = deadline;
         this.baseTarget = baseTarget;
         this.sharePercent = sharePercent;
@@ -19,11 +17,11 @@ public class Deadline {
         this.boostPool = boostPool;
     }
 
-    public BigInteger getDeadline() {
+    public long getDeadline() {
         return deadline;
     }
 
-    public BigInteger getBaseTarget() {
+    public long getBaseTarget() {
         return baseTarget;
     }
 
@@ -51,7 +49,10 @@ public class Deadline {
         this.boostPool = boostPool;
     }
 
-    public BigInteger calculateHit() {
-        return baseTarget.multiply(deadline);
+    /**
+     * @return baseTarget * deadline, as a double since the product can overflow a long
+     */
+    public double calculateHit() {
+        return (double) baseTarget * (double) deadline;
     }
 }
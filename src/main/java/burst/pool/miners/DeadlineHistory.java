@@ -0,0 +1,538 @@
+package burst.pool.miners;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool-wide deadline history, kept in primitive arrays as a ring buffer per miner.
+ *
+ * Each miner gets a row of {@code window} slots and a deadline for height h lives in
+ * slot {@code h % window} of that row, so storing or looking up a deadline is O(1) and
+ * sweeping all deadlines of all miners walks the arrays sequentially. A deadline never
+ * replaces one of another height that is still needed by the block processing, the window
+ * grows instead when processing falls behind and shrinks back once it caught up.
+ *
+ * The hit sums of the last swept height range are kept per miner and moved along with the
+ * range, adding the deadlines that enter it and subtracting the ones that leave, so a sweep
+ * does not depend on the window size. They are recalculated in full once every window sweeps
+ * so floating point errors cannot build up.
+ */
+public class DeadlineHistory {
+    private static final Logger logger = LoggerFactory.getLogger(DeadlineHistory.class);
+    private static final int LOCK_STRIPES = 64;
+
+    private final int configuredWindow;
+    private final boolean verifySums;
+    private final ConcurrentHashMap<Long, Integer> minerIndexes = new ConcurrentHashMap<>();
+    // Slots are read and written under the read lock, only growing the arrays takes the write lock
+    private final ReadWriteLock arraysLock = new ReentrantReadWriteLock();
+    private final Object[] minerLocks = new Object[LOCK_STRIPES];
+
+    // Deadlines below this height are not needed by the block processing anymore
+    private volatile long retainedFrom;
+    private int window;
+    private int minerCapacity;
+    private int[] latestHeights;
+    private int[] heights;
+    private long[] deadlines;
+    private long[] baseTargets;
+    private byte[] sharePercents;
+    private double[] boosts;
+    private double[] boostPools;
+
+    // Running sums per miner over the heights sumFrom <= height < sumTo, sumTo is 0 until the first sweep
+    private long[] sumFroms;
+    private long[] sumTos;
+    private int[] sweepsSinceRecalculation;
+    private int[] counts;
+    private int[] sharedCounts;
+    private double[] hitSums;
+    private double[] hitSumsBoost;
+    private double[] hitSumsShared;
+
+    /**
+     * @param verifySums recalculate the running hit sums in full on every sweep and log any difference
+     */
+    public DeadlineHistory(int window, boolean verifySums) {
+        this.configuredWindow = window;
+        this.window = window;
+        this.verifySums = verifySums;
+        for (int i = 0; i < minerLocks.length; i++) {
+            minerLocks[i] = new Object();
+        }
+        allocate(64);
+    }
+
+    private void allocate(int newCapacity) {
+        latestHeights = latestHeights == null ? new int[newCapacity] : Arrays.copyOf(latestHeights, newCapacity);
+        heights = heights == null ? new int[newCapacity * window] : Arrays.copyOf(heights, newCapacity * window);
+        deadlines = deadlines == null ? new long[newCapacity * window] : Arrays.copyOf(deadlines, newCapacity * window);
+        baseTargets = baseTargets == null ? new long[newCapacity * window] : Arrays.copyOf(baseTargets, newCapacity * window);
+        sharePercents = sharePercents == null ? new byte[newCapacity * window] : Arrays.copyOf(sharePercents, newCapacity * window);
+        boosts = boosts == null ? new double[newCapacity * window] : Arrays.copyOf(boosts, newCapacity * window);
+        boostPools = boostPools == null ? new double[newCapacity * window] : Arrays.copyOf(boostPools, newCapacity * window);
+        sumFroms = sumFroms == null ? new long[newCapacity] : Arrays.copyOf(sumFroms, newCapacity);
+        sumTos = sumTos == null ? new long[newCapacity] : Arrays.copyOf(sumTos, newCapacity);
+        sweepsSinceRecalculation = sweepsSinceRecalculation == null ? new int[newCapacity] : Arrays.copyOf(sweepsSinceRecalculation, newCapacity);
+        counts = counts == null ? new int[newCapacity] : Arrays.copyOf(counts, newCapacity);
+        sharedCounts = sharedCounts == null ? new int[newCapacity] : Arrays.copyOf(sharedCounts, newCapacity);
+        hitSums = hitSums == null ? new double[newCapacity] : Arrays.copyOf(hitSums, newCapacity);
+        hitSumsBoost = hitSumsBoost == null ? new double[newCapacity] : Arrays.copyOf(hitSumsBoost, newCapacity);
+        hitSumsShared = hitSumsShared == null ? new double[newCapacity] : Arrays.copyOf(hitSumsShared, newCapacity);
+        minerCapacity = newCapacity;
+    }
+
+    /**
+     * @return the row of the given account, a new one is assigned the first time an account is seen
+     */
+    public int indexOf(long accountId) {
+        Integer index = minerIndexes.get(accountId);
+        if (index != null) {
+            return index;
+        }
+        synchronized (minerIndexes) {
+            index = minerIndexes.get(accountId);
+            if (index == null) {
+                index = minerIndexes.size();
+                if (index >= minerCapacity) {
+                    arraysLock.writeLock().lock();
+                    try {
+                        allocate(minerCapacity * 2);
+                    } finally {
+                        arraysLock.writeLock().unlock();
+                    }
+                }
+                minerIndexes.put(accountId, index);
+            }
+            return index;
+        }
+    }
+
+    private int slot(int miner, long height) {
+        return miner * window + (int) (height % window);
+    }
+
+    private Object lockFor(int miner) {
+        return minerLocks[miner % LOCK_STRIPES];
+    }
+
+    /**
+     * Moves the oldest height still needed forward, deadlines below it can be replaced or dropped.
+     * Sweeps move it along, and the window is compacted once the needed heights fit again.
+     */
+    public void retainFrom(long height) {
+        if (height <= retainedFrom) {
+            return;
+        }
+        synchronized (this) {
+            if (height <= retainedFrom) {
+                return;
+            }
+            retainedFrom = height;
+        }
+        if (window > configuredWindow) {
+            compactWindow();
+        }
+    }
+
+    /**
+     * Stores the deadline if there is none for its height or if it is better than the stored one.
+     * Deadlines older than the latest height seen for this miner are ignored.
+     */
+    public void submit(int miner, Deadline deadline) {
+        while (!tryWrite(miner, deadline, true)) {
+            growWindow(deadline.getHeight());
+        }
+    }
+
+    /**
+     * Stores the deadline unconditionally, used when loading the history from the DB.
+     */
+    public void put(int miner, Deadline deadline) {
+        if (deadline.getHeight() < retainedFrom) {
+            return;
+        }
+        while (!tryWrite(miner, deadline, false)) {
+            growWindow(deadline.getHeight());
+        }
+    }
+
+    /**
+     * @return false if the slot holds a still needed deadline of another height, the window must grow first
+     */
+    private boolean tryWrite(int miner, Deadline deadline, boolean onlyBetter) {
+        arraysLock.readLock().lock();
+        try {
+            synchronized (lockFor(miner)) {
+                if (onlyBetter && deadline.getHeight() < latestHeights[miner]) {
+                    // no need, this is for an older block
+                    return true;
+                }
+                int slot = slot(miner, deadline.getHeight());
+                if (heights[slot] == deadline.getHeight()) {
+                    if (onlyBetter && deadlines[slot] <= deadline.getDeadline()) {
+                        // no need we already have one better
+                        return true;
+                    }
+                } else if (heights[slot] != 0 && heights[slot] >= retainedFrom) {
+                    return false;
+                }
+                write(miner, slot, deadline);
+                return true;
+            }
+        } finally {
+            arraysLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Makes the window large enough for all needed heights up to the given one, the running sums
+     * are recalculated on the next sweep.
+     */
+    private void growWindow(long height) {
+        arraysLock.writeLock().lock();
+        try {
+            long oldest = height;
+            long newest = height;
+            for (int slot = 0; slot < heights.length; slot++) {
+                if (heights[slot] != 0 && heights[slot] >= retainedFrom) {
+                    oldest = Math.min(oldest, heights[slot]);
+                    newest = Math.max(newest, heights[slot]);
+                }
+            }
+            if (newest - oldest < window) {
+                // Already grown by another thread
+                return;
+            }
+            int newWindow = (int) Math.max(2L * window, newest - oldest + 1);
+            logger.info("Deadline history window grown from {} to {} blocks, block processing is behind", window, newWindow);
+            resize(newWindow);
+        } finally {
+            arraysLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Shrinks the window back to the configured one if all needed heights fit in it again.
+     */
+    private void compactWindow() {
+        arraysLock.writeLock().lock();
+        try {
+            if (window <= configuredWindow) {
+                // Already compacted by another thread
+                return;
+            }
+            long newest = retainedFrom;
+            for (int miner = 0; miner < minerCapacity; miner++) {
+                newest = Math.max(newest, latestHeights[miner]);
+            }
+            if (newest - retainedFrom >= configuredWindow) {
+                return;
+            }
+            logger.info("Deadline history window compacted from {} to {} blocks, block processing caught up", window, configuredWindow);
+            resize(configuredWindow);
+        } finally {
+            arraysLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Moves the needed deadlines to rows of the new window size, under the write lock. The running
+     * sums are recalculated on the next sweep.
+     */
+    private void resize(int newWindow) {
+        int[] newHeights = new int[minerCapacity * newWindow];
+        long[] newDeadlines = new long[minerCapacity * newWindow];
+        long[] newBaseTargets = new long[minerCapacity * newWindow];
+        byte[] newSharePercents = new byte[minerCapacity * newWindow];
+        double[] newBoosts = new double[minerCapacity * newWindow];
+        double[] newBoostPools = new double[minerCapacity * newWindow];
+        for (int slot = 0; slot < heights.length; slot++) {
+            if (heights[slot] == 0 || heights[slot] < retainedFrom) {
+                continue;
+            }
+            int newSlot = (slot / window) * newWindow + heights[slot] % newWindow;
+            newHeights[newSlot] = heights[slot];
+            newDeadlines[newSlot] = deadlines[slot];
+            newBaseTargets[newSlot] = baseTargets[slot];
+            newSharePercents[newSlot] = sharePercents[slot];
+            newBoosts[newSlot] = boosts[slot];
+            newBoostPools[newSlot] = boostPools[slot];
+        }
+        window = newWindow;
+        heights = newHeights;
+        deadlines = newDeadlines;
+        baseTargets = newBaseTargets;
+        sharePercents = newSharePercents;
+        boosts = newBoosts;
+        boostPools = newBoostPools;
+        // Dropped deadlines may have been summed
+        Arrays.fill(sumTos, 0);
+    }
+
+    private void write(int miner, int slot, Deadline deadline) {
+        if (isSummed(miner, heights[slot])) {
+            accumulate(miner, slot, -1);
+        }
+        heights[slot] = (int) deadline.getHeight();
+        deadlines[slot] = deadline.getDeadline();
+        baseTargets[slot] = deadline.getBaseTarget();
+        sharePercents[slot] = (byte) deadline.getSharePercent();
+        boosts[slot] = deadline.getBoost();
+        boostPools[slot] = deadline.getBoostPool();
+        latestHeights[miner] = Math.max(latestHeights[miner], heights[slot]);
+        if (isSummed(miner, heights[slot])) {
+            accumulate(miner, slot, 1);
+        }
+    }
+
+    private boolean isSummed(int miner, long height) {
+        return height != 0 && height >= sumFroms[miner] && height < sumTos[miner];
+    }
+
+    /**
+     * Adds (sign 1) or subtracts (sign -1) the hits of the slot to the running sums of the miner.
+     */
+    private void accumulate(int miner, int slot, int sign) {
+        double hit = (double) baseTargets[slot] * (double) deadlines[slot];
+        double hitBoost = hit / boostPools[slot];
+        counts[miner] += sign;
+        hitSums[miner] += sign * hit;
+        hitSumsBoost[miner] += sign * hitBoost;
+        if (sharePercents[slot] > 0) {
+            sharedCounts[miner] += sign;
+            hitSumsShared[miner] += sign * hitBoost * 100.0 / sharePercents[slot];
+        }
+    }
+
+    /**
+     * @return a copy of the deadline stored for the given height, or null
+     */
+    public Deadline get(int miner, long height) {
+        arraysLock.readLock().lock();
+        try {
+            synchronized (lockFor(miner)) {
+                int slot = slot(miner, height);
+                if (heights[slot] != height || height == 0) {
+                    return null;
+                }
+                return toDeadline(slot);
+            }
+        } finally {
+            arraysLock.readLock().unlock();
+        }
+    }
+
+    public void setBoostPool(int miner, long height, double boostPool) {
+        arraysLock.readLock().lock();
+        try {
+            synchronized (lockFor(miner)) {
+                int slot = slot(miner, height);
+                if (heights[slot] == height) {
+                    boolean summed = isSummed(miner, height);
+                    if (summed) {
+                        accumulate(miner, slot, -1);
+                    }
+                    boostPools[slot] = boostPool;
+                    if (summed) {
+                        accumulate(miner, slot, 1);
+                    }
+                }
+            }
+        } finally {
+            arraysLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return all deadlines stored for the miner, ordered by height
+     */
+    public List<Deadline> getDeadlines(int miner) {
+        List<Deadline> result = new ArrayList<>();
+        arraysLock.readLock().lock();
+        try {
+            synchronized (lockFor(miner)) {
+                int start = miner * window;
+                for (int slot = start; slot < start + window; slot++) {
+                    if (heights[slot] != 0) {
+                        result.add(toDeadline(slot));
+                    }
+                }
+            }
+        } finally {
+            arraysLock.readLock().unlock();
+        }
+        result.sort(Comparator.comparingLong(Deadline::getHeight));
+        return result;
+    }
+
+    int getWindow() {
+        return window;
+    }
+
+    private Deadline toDeadline(int slot) {
+        return new Deadline(deadlines[slot], baseTargets[slot], sharePercents[slot], heights[slot], boosts[slot], boostPools[slot]);
+    }
+
+    /**
+     * Sums the hits of the miner deadlines with fromHeight <= height < toHeight, deadlines older
+     * than fromHeight are dropped.
+     */
+    public HitSums sweep(int miner, long fromHeight, long toHeight) {
+        HitSums sums = new HitSums();
+        // The same for all miners of a block, only the first sweep of a block moves it
+        retainFrom(fromHeight);
+        arraysLock.readLock().lock();
+        try {
+            synchronized (lockFor(miner)) {
+                long sumFrom = sumFroms[miner];
+                long sumTo = sumTos[miner];
+                boolean slides = sumTo != 0 && fromHeight >= sumFrom && toHeight >= sumTo
+                        && fromHeight - sumFrom < window && toHeight - sumTo < window;
+                if (slides && ++sweepsSinceRecalculation[miner] < window) {
+                    slide(miner, fromHeight, toHeight);
+                    if (verifySums) {
+                        verify(miner, fromHeight, toHeight);
+                    }
+                } else {
+                    recalculate(miner, fromHeight, toHeight);
+                }
+                sums.count = counts[miner];
+                sums.sharedCount = sharedCounts[miner];
+                sums.hitSum = hitSums[miner];
+                sums.hitSumBoost = hitSumsBoost[miner];
+                sums.hitSumShared = hitSumsShared[miner];
+            }
+        } finally {
+            arraysLock.readLock().unlock();
+        }
+        return sums;
+    }
+
+    /**
+     * Moves the running sums of the miner to the new range, only visiting the heights that leave or enter it.
+     */
+    private void slide(int miner, long fromHeight, long toHeight) {
+        long sumTo = sumTos[miner];
+        // Heights start at 1, the range begins below that while the chain is shorter than nAvg
+        for (long height = Math.max(sumFroms[miner], 1); height < fromHeight; height++) {
+            int slot = slot(miner, height);
+            if (heights[slot] == height) {
+                if (height < sumTo) {
+                    accumulate(miner, slot, -1);
+                }
+                heights[slot] = 0;
+            }
+        }
+        sumFroms[miner] = fromHeight;
+        for (long height = Math.max(Math.max(fromHeight, sumTo), 1); height < toHeight; height++) {
+            int slot = slot(miner, height);
+            if (heights[slot] == height) {
+                accumulate(miner, slot, 1);
+            }
+        }
+        sumTos[miner] = toHeight;
+        if (counts[miner] == 0) {
+            // Nothing left to sum, so start again from an exact zero
+            hitSums[miner] = 0d;
+            hitSumsBoost[miner] = 0d;
+        }
+        if (sharedCounts[miner] == 0) {
+            hitSumsShared[miner] = 0d;
+        }
+    }
+
+    /**
+     * Sums the whole row of the miner again, dropping the deadlines older than fromHeight.
+     */
+    private void recalculate(int miner, long fromHeight, long toHeight) {
+        counts[miner] = 0;
+        sharedCounts[miner] = 0;
+        hitSums[miner] = 0d;
+        hitSumsBoost[miner] = 0d;
+        hitSumsShared[miner] = 0d;
+        int start = miner * window;
+        for (int slot = start; slot < start + window; slot++) {
+            int height = heights[slot];
+            if (height == 0 || height >= toHeight) {
+                continue;
+            }
+            if (height < fromHeight) {
+                heights[slot] = 0;
+                continue;
+            }
+            accumulate(miner, slot, 1);
+        }
+        sumFroms[miner] = fromHeight;
+        sumTos[miner] = toHeight;
+        sweepsSinceRecalculation[miner] = 0;
+    }
+
+    private void verify(int miner, long fromHeight, long toHeight) {
+        int count = counts[miner];
+        int sharedCount = sharedCounts[miner];
+        double hitSum = hitSums[miner];
+        double hitSumBoost = hitSumsBoost[miner];
+        double hitSumShared = hitSumsShared[miner];
+        recalculate(miner, fromHeight, toHeight);
+        if (count != counts[miner] || sharedCount != sharedCounts[miner] || differs(hitSum, hitSums[miner])
+                || differs(hitSumBoost, hitSumsBoost[miner]) || differs(hitSumShared, hitSumsShared[miner])) {
+            logger.warn("Running hit sums of miner {} differ from the recalculated ones: count {}/{}, shared count {}/{}, hit sum {}/{}, boosted {}/{}, shared {}/{}",
+                    accountIdOf(miner), count, counts[miner], sharedCount, sharedCounts[miner], hitSum, hitSums[miner],
+                    hitSumBoost, hitSumsBoost[miner], hitSumShared, hitSumsShared[miner]);
+        }
+    }
+
+    /**
+     * @return the unsigned account id of the row, for the log
+     */
+    private String accountIdOf(int miner) {
+        for (Map.Entry<Long, Integer> entry : minerIndexes.entrySet()) {
+            if (entry.getValue() == miner) {
+                return Long.toUnsignedString(entry.getKey());
+            }
+        }
+        return "row " + miner;
+    }
+
+    private static boolean differs(double running, double recalculated) {
+        return Math.abs(running - recalculated) > 1e-9 * Math.max(Math.abs(running), Math.abs(recalculated));
+    }
+
+    public static class HitSums {
+        private int count;
+        private int sharedCount;
+        private double hitSum;
+        private double hitSumBoost;
+        private double hitSumShared;
+
+        public int getCount() {
+            return count;
+        }
+
+        public int getSharedCount() {
+            return sharedCount;
+        }
+
+        public double getHitSum() {
+            return hitSum;
+        }
+
+        public double getHitSumBoost() {
+            return hitSumBoost;
+        }
+
+        public double getHitSumShared() {
+            return hitSumShared;
+        }
+    }
+}
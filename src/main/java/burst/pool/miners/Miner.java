@@ -1,10 +1,6 @@
 package burst.pool.miners;
 
-import java.math.BigInteger;
-import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -16,33 +12,47 @@ import burst.pool.storage.config.Props;
 import burst.pool.storage.persistent.MinerStore;
 
 public class Miner implements Payable {
-    private final MinerMaths minerMaths;
     private final PropertyService propertyService;
+    private final DeadlineHistory deadlineHistory;
+    private final int historyIndex;
 
     private final SignumAddress address;
     private final MinerStore store;
-    private int commitmentHeight;
+    // Written last by the account refresh threads, so a submit thread seeing it also sees the commitment
+    private volatile int commitmentHeight;
     private AtomicReference<SignumValue> commitment = new AtomicReference<>();
     private AtomicReference<SignumValue> committedBalance = new AtomicReference<>();
     private String userAgent, name;
     private AtomicInteger nconf = new AtomicInteger(0);
-    private ConcurrentLinkedQueue<Deadline> deadlines = new ConcurrentLinkedQueue<>();
     private AtomicReference<Double> boost = new AtomicReference<>();
     private AtomicReference<Double> boostPool = new AtomicReference<>();
     private AtomicReference<Double> totalCapacityEffective = new AtomicReference<>();
 
-    public Miner(MinerMaths minerMaths, PropertyService propertyService, SignumAddress address, MinerStore store) {
-        this.minerMaths = minerMaths;
+    public Miner(PropertyService propertyService, DeadlineHistory deadlineHistory, SignumAddress address, MinerStore store) {
+        this(propertyService, deadlineHistory, address, store, store.getDeadlines());
+    }
+
+    /**
+     * Builds the miner with an already loaded deadline history, so many miners can be loaded at once.
+     */
+    public Miner(PropertyService propertyService, DeadlineHistory deadlineHistory, SignumAddress address, MinerStore store,
+            List<Deadline> storeDeadlines) {
         this.propertyService = propertyService;
+        this.deadlineHistory = deadlineHistory;
+        this.historyIndex = deadlineHistory.indexOf(address.getSignumID().getSignedLongId());
         this.address = address;
         this.store = store;
         
         // Read the deadline history from the DB the first time and then keep on memory
-        List<Deadline> storeDeadlines = store.getDeadlines();
-        deadlines.addAll(storeDeadlines);
-        if(storeDeadlines.size() > 0) {
+        Deadline latestDeadline = null;
+        for (Deadline deadline : storeDeadlines) {
+            deadlineHistory.put(historyIndex, deadline);
+            if (latestDeadline == null || deadline.getHeight() > latestDeadline.getHeight()) {
+                latestDeadline = deadline;
+            }
+        }
+        if(latestDeadline != null) {
             nconf.set(storeDeadlines.size()-1);
-            Deadline latestDeadline = storeDeadlines.get(storeDeadlines.size()-1);
             boost.set(latestDeadline.getBoost());
             boostPool.set(latestDeadline.getBoostPool());
         }
@@ -53,90 +63,59 @@ public class Miner implements Payable {
         userAgent = "...";
     }
 
-    public void recalculateCapacity(Block block) {
-        
+    /**
+     * Sums the hits of the deadlines this miner has in the estimation window of the given processed block.
+     * Deadlines older than nAvg are dropped.
+     */
+    public DeadlineHistory.HitSums sweepDeadlines(Block block) {
         long processBlockHeight = block.getHeight();
-        
-        BigInteger hitSum = BigInteger.ZERO;
-        BigInteger hitSumBoost = BigInteger.ZERO;
-        Deadline deadlineToSave = null;
-        
-        BigInteger hitSumShared = BigInteger.ZERO;
-        int deadlinesSharedCount = 0;
+        int nAvg = propertyService.getInt(Props.nAvg);
+        long lastBlockHeight = processBlockHeight + propertyService.getInt(Props.processLag);
+
+        // We use all deadlines except the current one, so users have a best experience being able to see
+        // their miner even on the first submitted deadline.
+        return deadlineHistory.sweep(historyIndex, processBlockHeight - nAvg, lastBlockHeight);
+    }
+
+    /**
+     * Completes the capacities of this miner for the given processed block, from its hit sums and the plot
+     * sizes estimated for all miners at once, without touching the store so it can run for all miners in
+     * parallel. The result is applied with {@link #applyCapacity} and stored in bulk by the storage service.
+     */
+    public MinerCapacity calculateCapacity(Block block, DeadlineHistory.HitSums hitSums, double estimatedCapacity,
+            double estimatedCapacityWithBoost, double sharedCapacity) {
         
         int nAvg = propertyService.getInt(Props.nAvg);
         int processLag = propertyService.getInt(Props.processLag);
-        long lastBlockHeight = processBlockHeight + processLag;
+        long lastBlockHeight = block.getHeight() + processLag;
         
-        // First loop will calculate the average for the physical capacity
-        int deadlinesCount = 0;
-        Iterator<Deadline> it = deadlines.iterator();
-        while(it.hasNext()) {
-            Deadline deadline = it.next();
-            
-            if (deadline.getHeight() >= lastBlockHeight) {
-                // We use all deadlines except the current one, so users have a best experience being able to see
-                // their miner even on the first submitted deadline.
-                continue;
-            }
-            if(deadline.getHeight() < processBlockHeight - nAvg) {
-                it.remove();
-                continue;
-            }
-            deadlinesCount++;
-            BigInteger hit = deadline.calculateHit();
-            
-            hitSum = hitSum.add(hit);
-            
-            double hitBoost = hit.doubleValue()/deadline.getBoostPool();
-            hitSumBoost = hitSumBoost.add(BigInteger.valueOf((long)hitBoost));
-            
-            if(deadline.getSharePercent() > 0) {
-                double hitShared = hitBoost*100.0/(deadline.getSharePercent());
-                hitSumShared = hitSumShared.add(BigInteger.valueOf((long)hitShared));
-                
-                deadlinesSharedCount++;
-            }
+        int deadlinesCount = hitSums.getCount();
+        Deadline deadlineToSave = deadlineHistory.get(historyIndex, lastBlockHeight - 1);
 
-            if(deadline.getHeight() == lastBlockHeight - 1) {
-                deadlineToSave = deadline;
-            }
+        if(deadlineToSave != null && deadlinesCount > nAvg/4) {
+            // enough deadlines to make a reasonable estimate using pool data besides the chain data
+            SignumValue commitmentPool = getCommittedBalance().divide(Math.max(1.0, estimatedCapacityWithBoost));
+
+            double boostPool = MinerTracker.getCommitmentFactor(commitmentPool, block.getAverageCommitmentNQT());
+            deadlineToSave.setBoostPool(boostPool);
         }
-        nconf.set(Math.min(nAvg+processLag, deadlinesCount));
-        
-        double estimatedCapacity = minerMaths.estimatedTotalPlotSize(deadlinesCount, hitSum);
-        double estimatedCapacityWithBoost = minerMaths.estimatedTotalPlotSize(deadlinesCount, hitSumBoost);
-        totalCapacityEffective.set(estimatedCapacityWithBoost);
 
+        return new MinerCapacity(this, Math.min(nAvg+processLag, deadlinesCount), estimatedCapacity, estimatedCapacityWithBoost,
+                sharedCapacity, deadlineToSave);
+    }
+
+    public void applyCapacity(MinerCapacity capacity) {
+        nconf.set(capacity.getNConf());
+        totalCapacityEffective.set(capacity.getEffectiveCapacity());
+
+        Deadline deadlineToSave = capacity.getDeadlineToSave();
         if(deadlineToSave != null) {
             // we have a new deadline to save to the DB
-            if(deadlinesCount > nAvg/4) {
-                // enough deadlines to make a reasonable estimate using pool data besides the chain data
-                SignumValue commitmentPool = getCommittedBalance().divide(Math.max(1.0, estimatedCapacityWithBoost));
-
-                double boostPool = MinerTracker.getCommitmentFactor(commitmentPool, block.getAverageCommitmentNQT());
-                deadlineToSave.setBoostPool(boostPool);
-            }
-            
-            // store in the database
+            deadlineHistory.setBoostPool(historyIndex, deadlineToSave.getHeight(), deadlineToSave.getBoostPool());
             store.setOrUpdateDeadline(deadlineToSave.getHeight(), deadlineToSave);
             this.boost.set(deadlineToSave.getBoost());
             this.boostPool.set(deadlineToSave.getBoostPool());
         }
-
-        // Store the calculated values on the DB
-        store.setSharedCapacity(minerMaths.estimatedEffectivePlotSize(deadlinesSharedCount, hitSumShared));
-        store.setTotalCapacity(estimatedCapacity);
-    }
-
-    public void recalculateShare(double poolCapacity) {
-        if (poolCapacity == 0d) {
-            store.setShare(0d);
-            return;
-        }
-        double newShare = getSharedCapacity() / poolCapacity;
-        if (Double.isNaN(newShare)) newShare = 0d;
-        store.setShare(newShare);
     }
 
     @Override
@@ -167,28 +146,7 @@ public class Miner implements Payable {
     }
 
     public void processNewDeadline(Deadline deadline) {
-        Deadline previousDeadline = null;
-        for (Deadline existingDeadline : deadlines) {
-            if (existingDeadline.getHeight() > deadline.getHeight()) {
-                // no need, this is for an older block
-                return;
-            }
-            if (existingDeadline.getHeight() == deadline.getHeight()) {
-                if(deadline.getDeadline().compareTo(existingDeadline.getDeadline()) < 0) {
-                    // the new deadline which is better
-                    previousDeadline = existingDeadline;
-                    break;
-                }
-                else {
-                    // no need we already have one better
-                    return;
-                }
-            }
-        }
-        if(previousDeadline != null)
-            deadlines.remove(previousDeadline);
-
-        deadlines.add(deadline);
+        deadlineHistory.submit(historyIndex, deadline);
     }
 
     public double getSharedCapacity() {
@@ -290,14 +248,10 @@ public class Miner implements Payable {
     }
 
     public Deadline getBestDeadline(long height) {
-        for(Deadline deadline : deadlines) {
-            if(deadline.getHeight() == height)
-                return deadline;
-        }
-        return null;
+        return deadlineHistory.get(historyIndex, height);
     }
     
     public List<Deadline> getDeadlines() {
-        return new ArrayList<>(deadlines);
+        return deadlineHistory.getDeadlines(historyIndex);
     }
 }
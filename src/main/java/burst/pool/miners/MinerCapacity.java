@@ -0,0 +1,58 @@
+package burst.pool.miners;
+
+/**
+ * Immutable result of a miner capacity recalculation for a processed block.
+ * Computed for all miners in parallel and then applied to storage.
+ */
+public class MinerCapacity {
+    private final Miner miner;
+    private final int nConf;
+    private final double totalCapacity;
+    private final double effectiveCapacity;
+    private final double sharedCapacity;
+    private final Deadline deadlineToSave;
+
+    public MinerCapacity(Miner miner, int nConf, double totalCapacity, double effectiveCapacity, double sharedCapacity, Deadline deadlineToSave) {
+        this.miner = miner;
+        this.nConf = nConf;
+        this.totalCapacity = totalCapacity;
+        this.effectiveCapacity = effectiveCapacity;
+        this.sharedCapacity = sharedCapacity;
+        this.deadlineToSave = deadlineToSave;
+    }
+
+    public Miner getMiner() {
+        return miner;
+    }
+
+    public int getNConf() {
+        return nConf;
+    }
+
+    public double getTotalCapacity() {
+        return totalCapacity;
+    }
+
+    public double getEffectiveCapacity() {
+        return effectiveCapacity;
+    }
+
+    public double getSharedCapacity() {
+        return sharedCapacity;
+    }
+
+    public double getShare(double poolCapacity) {
+        if (poolCapacity == 0d) {
+            return 0d;
+        }
+        double share = sharedCapacity / poolCapacity;
+        return Double.isNaN(share) ? 0d : share;
+    }
+
+    /**
+     * @return the deadline that left the process lag and should be stored, or null
+     */
+    public Deadline getDeadlineToSave() {
+        return deadlineToSave;
+    }
+}
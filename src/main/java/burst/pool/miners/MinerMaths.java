@@ -3,13 +3,13 @@ package burst.pool.miners;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.math.BigInteger;
-
 public class MinerMaths {
     private final Logger logger = LoggerFactory.getLogger(MinerMaths.class);
 
     public static final long GENESIS_BASE_TARGET = 18325193796L;
     private final double[] alphas;
+    // Alpha by nConf without branches: 0 for no confirmations, then the alphas, then 1 for any nConf beyond them
+    private final double[] alphaByNConf;
 
     public MinerMaths(int nAvg, int nMin, int nGrace) {
         alphas = new double[nAvg];
@@ -25,6 +25,9 @@ public class MinerMaths {
         for (int i = 1; i <= nGrace; i++) {
             alphas[nAvg - 1 - i] = 1d;
         }
+        alphaByNConf = new double[nAvg + 2];
+        System.arraycopy(alphas, 0, alphaByNConf, 1, nAvg);
+        alphaByNConf[nAvg + 1] = 1d;
     }
     
     /**
@@ -34,19 +37,51 @@ public class MinerMaths {
      * @param hitSum
      * @return the estimated total capacity
      */
-    public double estimatedTotalPlotSize(int nConf, BigInteger hitSum) {
+    public double estimatedTotalPlotSize(int nConf, double hitSum) {
         return estimatePlotSize(1.0, nConf, hitSum);
     }
 
-    public double estimatedEffectivePlotSize(int nConf, BigInteger hitSum) {
+    public double estimatedEffectivePlotSize(int nConf, double hitSum) {
         return estimatePlotSize(alpha(nConf), nConf, hitSum);
     }
     
-    private double estimatePlotSize(double alphaValue, int nConf, BigInteger hitSum) {
-        if (hitSum.compareTo(BigInteger.ZERO) == 0) {
+    /**
+     * Batch version of {@link #estimatedTotalPlotSize} for all miners at once, written as a single
+     * branch-free loop over primitive arrays so the JIT can unroll and vectorise it.
+     *
+     * @param plotSizes filled with the estimated total capacity of each miner
+     */
+    public void estimatedTotalPlotSizes(int[] nConfs, double[] hitSums, double[] plotSizes) {
+        for (int i = 0; i < plotSizes.length; i++) {
+            plotSizes[i] = checkedPlotSize(240d * ((double) nConfs[i] - 1d) * (double) GENESIS_BASE_TARGET / hitSums[i]);
+        }
+    }
+
+    /**
+     * Batch version of {@link #estimatedEffectivePlotSize}, see {@link #estimatedTotalPlotSizes}.
+     *
+     * @param plotSizes filled with the estimated effective capacity of each miner
+     */
+    public void estimatedEffectivePlotSizes(int[] nConfs, double[] hitSums, double[] plotSizes) {
+        int lastAlpha = alphaByNConf.length - 1;
+        for (int i = 0; i < plotSizes.length; i++) {
+            double alphaValue = alphaByNConf[Math.min(nConfs[i], lastAlpha)];
+            plotSizes[i] = checkedPlotSize(alphaValue * 240d * ((double) nConfs[i] - 1d) * (double) GENESIS_BASE_TARGET / hitSums[i]);
+        }
+    }
+
+    /**
+     * @return the plot size, or 0 if it is infinite or NaN (as is the case for a zero hit sum)
+     */
+    private static double checkedPlotSize(double plotSize) {
+        return Math.abs(plotSize) <= Double.MAX_VALUE ? plotSize : 0d;
+    }
+
+    private double estimatePlotSize(double alphaValue, int nConf, double hitSum) {
+        if (hitSum == 0d) {
             return 0.0;
         }
-        double plotSize =  alphaValue * 240d * (((double)nConf)-1d) * (double)GENESIS_BASE_TARGET / hitSum.doubleValue();
+        double plotSize =  alphaValue * 240d * (((double)nConf)-1d) * (double)GENESIS_BASE_TARGET / hitSum;
         if (Double.isInfinite(plotSize) || Double.isNaN(plotSize)) {
             logger.debug("Calculated impossible plot size. alpha: " + alphaValue + ", nConf: " + nConf + ", hitSum: " + hitSum);
             return 0.0;
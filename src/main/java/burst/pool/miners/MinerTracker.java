@@ -13,8 +13,12 @@ import burst.pool.entity.WonBlock;
 import burst.pool.storage.config.PropertyService;
 import burst.pool.storage.config.Props;
 import burst.pool.storage.persistent.StorageService;
+import io.reactivex.Observable;
 import io.reactivex.Single;
 import io.reactivex.disposables.CompositeDisposable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.disposables.SerialDisposable;
+import io.reactivex.schedulers.Schedulers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -25,21 +29,26 @@ import java.util.*;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class MinerTracker {
     private static final Logger logger = LoggerFactory.getLogger(MinerTracker.class);
 
     private final CompositeDisposable compositeDisposable = new CompositeDisposable();
+    private final SerialDisposable accountRefresh = new SerialDisposable();
     private final PropertyService propertyService;
     private final SignumCrypto signumCrypto = SignumCrypto.getInstance();
     private final NodeService nodeService;
+    private final MinerMaths minerMaths;
     private final AtomicBoolean currentlyProcessingBlock = new AtomicBoolean(false);
     
     private final Semaphore payoutSemaphore = new Semaphore(1);
 
-    public MinerTracker(NodeService nodeService, PropertyService propertyService) {
+    public MinerTracker(NodeService nodeService, PropertyService propertyService, MinerMaths minerMaths) {
         this.nodeService = nodeService;
         this.propertyService = propertyService;
+        this.minerMaths = minerMaths;
     }
 
     public BigInteger onMinerSubmittedDeadline(StorageService storageService, SignumAddress minerAddress, BigInteger deadline, MiningInfo miningInfo, String userAgent) {
@@ -50,7 +59,9 @@ public class MinerTracker {
         long baseTarget = miningInfo.getBaseTarget();
         int blockHeight = (int) miningInfo.getHeight();
         
-        if(miner.getCommitmentHeight() != blockHeight) {
+        // Commitments are refreshed for every round by refreshMinerAccounts, we only wait on the node
+        // for a miner we have never seen before. Otherwise the last known values are used.
+        if(miner.getCommitmentHeight() == 0) {
             try {
                 // Get the latest available and not an explicit block height because this can generate exceptions
                 // in case the node is doing a roll-back for a short lived fork.
@@ -70,7 +81,7 @@ public class MinerTracker {
             
             commitmentFactor = getCommitmentFactor(commitment, miningInfo.getAverageCommitmentNQT());            
         }
-        miner.processNewDeadline(new Deadline(deadline, BigInteger.valueOf(baseTarget), miner.getSharePercent(), blockHeight,
+        miner.processNewDeadline(new Deadline(deadline.longValue(), baseTarget, miner.getSharePercent(), blockHeight,
                 commitmentFactor, commitmentFactor));
         
         // Now the effective deadline 
@@ -80,6 +91,29 @@ public class MinerTracker {
         return deadline;
     }
     
+    /**
+     * Refreshes name, commitment and committed balance of all known miners in the background,
+     * with at most accountRefreshConcurrency requests to the node at a time. A refresh still running
+     * from an earlier round is left to finish, so every miner is reached even if it takes several rounds.
+     */
+    public void refreshMinerAccounts(StorageService storageService, int height) {
+        Disposable running = accountRefresh.get();
+        if (running != null && !running.isDisposed()) {
+            logger.debug("Miner accounts are still being refreshed, not starting again at height {}", height);
+            return;
+        }
+        int concurrency = propertyService.getInt(Props.accountRefreshConcurrency);
+        accountRefresh.set(Observable.fromCallable(storageService::getMiners)
+                .flatMapIterable(miners -> miners)
+                .flatMap(miner -> nodeService.getAccount(miner.getAddress(), null, true, true)
+                        .toObservable()
+                        .doOnNext(accountResponse -> onMinerAccount(miner, accountResponse, height))
+                        .doOnError(this::onMinerAccountError)
+                        .onErrorResumeNext(Observable.<Account>empty()), concurrency)
+                .subscribeOn(Schedulers.io())
+                .subscribe(accountResponse -> {}, this::onMinerAccountError));
+    }
+
     public static double getCommitmentFactor(SignumValue commitment, long averageCommitment) {
         double commitmentFactor = ((double)commitment.longValue())/averageCommitment;
         commitmentFactor = Math.pow(commitmentFactor, 0.4515449935);
@@ -161,22 +195,49 @@ public class MinerTracker {
         
         List<Miner> miners = transactionalStorageService.getMiners();
         
-        double poolCapacity = 0d;
-        for(Miner miner : miners) {
-            // Update each miner's effective capacity
-            miner.recalculateCapacity(block);
-
-            // Calculate pool capacity
-            poolCapacity += miner.getSharedCapacity();
+        // Capacities are calculated in parallel on the fork-join pool, none of this touches the DB
+        int minerCount = miners.size();
+        DeadlineHistory.HitSums[] hitSums = new DeadlineHistory.HitSums[minerCount];
+        IntStream.range(0, minerCount).parallel().forEach(i -> hitSums[i] = miners.get(i).sweepDeadlines(block));
+
+        // The plot sizes of all miners are estimated in one pass over primitive arrays
+        int[] nConfs = new int[minerCount];
+        int[] sharedNConfs = new int[minerCount];
+        double[] hitSum = new double[minerCount];
+        double[] hitSumBoost = new double[minerCount];
+        double[] hitSumShared = new double[minerCount];
+        for (int i = 0; i < minerCount; i++) {
+            nConfs[i] = hitSums[i].getCount();
+            sharedNConfs[i] = hitSums[i].getSharedCount();
+            hitSum[i] = hitSums[i].getHitSum();
+            hitSumBoost[i] = hitSums[i].getHitSumBoost();
+            hitSumShared[i] = hitSums[i].getHitSumShared();
         }
-
-        for(Miner miner : miners) {
-            // Update each miner's share
-            miner.recalculateShare(poolCapacity);
+        double[] estimatedCapacities = new double[minerCount];
+        double[] estimatedCapacitiesWithBoost = new double[minerCount];
+        double[] sharedCapacities = new double[minerCount];
+        minerMaths.estimatedTotalPlotSizes(nConfs, hitSum, estimatedCapacities);
+        minerMaths.estimatedTotalPlotSizes(nConfs, hitSumBoost, estimatedCapacitiesWithBoost);
+        minerMaths.estimatedEffectivePlotSizes(sharedNConfs, hitSumShared, sharedCapacities);
+
+        List<MinerCapacity> capacities = IntStream.range(0, minerCount).parallel()
+                .mapToObj(i -> miners.get(i).calculateCapacity(block, hitSums[i], estimatedCapacities[i], estimatedCapacitiesWithBoost[i], sharedCapacities[i]))
+                .collect(Collectors.toList());
+        double poolCapacity = capacities.parallelStream()
+                .mapToDouble(MinerCapacity::getSharedCapacity)
+                .sum();
+
+        // Then stored from this thread, as the DB transaction is bound to it
+        for(MinerCapacity capacity : capacities) {
+            capacity.getMiner().applyCapacity(capacity);
         }
+        transactionalStorageService.updateMinerCapacities(capacities, poolCapacity);
     }
 
-    public void payoutIfNeeded(StorageService storageService, SignumValue transactionFee) {
+    /**
+     * @param onPaidOut run once the payout transaction is sent and the pending balances are decreased
+     */
+    public void payoutIfNeeded(StorageService storageService, SignumValue transactionFee, Runnable onPaidOut) {
         logger.info("Attempting payout...");
         if (payoutSemaphore.availablePermits() == 0) {
             logger.info("Cannot payout - payout is already in progress.");
@@ -263,7 +324,10 @@ public class MinerTracker {
         })
         .flatMap(signedBytes -> nodeService.broadcastTransaction(signedBytes)
                     .retry(propertyService.getInt(Props.payoutRetryCount)))
-        .subscribe(response -> onPaidOut(storageService, transactionId.get(), payees, publicKey, transactionFee, 1440, transactionAttachment.array()), this::onPayoutError));
+        .subscribe(response -> {
+            onPaidOut(storageService, transactionId.get(), payees, publicKey, transactionFee, 1440, transactionAttachment.array());
+            onPaidOut.run();
+        }, this::onPayoutError));
     }
 
     private void onPaidOut(StorageService storageService, SignumID transactionID, Map<Payable, SignumValue> paidMiners, byte[] senderPublicKey, SignumValue fee, int deadline, byte[] transactionAttachment) {
@@ -0,0 +1,56 @@
+package burst.pool.pool;
+
+import java.math.BigInteger;
+import java.util.concurrent.Semaphore;
+
+import signumj.crypto.SignumCrypto;
+import signumj.entity.response.MiningInfo;
+
+/**
+ * Calculates nonce deadlines on the calling thread, but no more at once than the configured number
+ * of verification threads, so the hashing of submissions is limited to the CPU cores instead of
+ * running on every connection thread at once. Submissions that do not fit in the bounded queue
+ * behind them are rejected instead of piling up.
+ */
+public class DeadlineVerifier {
+    private final SignumCrypto burstCrypto = SignumCrypto.getInstance();
+    // Submissions verifying or waiting to, taken without waiting
+    private final Semaphore admitted;
+    // Submissions verifying
+    private final Semaphore verifying;
+
+    /**
+     * @param threads the number of verifications at once, 0 for one per CPU core
+     * @param queueSize the number of submissions allowed to wait for one of them
+     */
+    public DeadlineVerifier(int threads, int queueSize) {
+        int concurrency = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.admitted = new Semaphore(concurrency + queueSize);
+        this.verifying = new Semaphore(concurrency, true);
+    }
+
+    /**
+     * @return the deadline of the submission for the round, waiting for a free verification slot
+     * @throws PoolOverloadedException if too many submissions are already waiting
+     */
+    public BigInteger calculateDeadline(Submission submission, MiningInfo miningInfo) throws SubmissionException {
+        if (!admitted.tryAcquire()) {
+            throw new PoolOverloadedException("Pool is busy, retry later");
+        }
+        try {
+            verifying.acquire();
+        } catch (InterruptedException e) {
+            admitted.release();
+            Thread.currentThread().interrupt();
+            throw new SubmissionException("Interrupted");
+        }
+        try {
+            return burstCrypto.calculateDeadline(submission.getMiner(), Long.parseUnsignedLong(submission.getNonce().toString()),
+                    miningInfo.getGenerationSignature(), burstCrypto.calculateScoop(miningInfo.getGenerationSignature(), miningInfo.getHeight()),
+                    miningInfo.getBaseTarget(), 2);
+        } finally {
+            verifying.release();
+            admitted.release();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package burst.pool.pool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Immutable, already serialized (UTF-8) API response. Built once per pool data version and then
+ * served as is, with a precompressed gzip body and an ETag for conditional requests.
+ */
+public class JsonSnapshot {
+    private final long version;
+    private final byte[] body;
+    private final byte[] gzipBody;
+    private final String etag;
+
+    private JsonSnapshot(long version, byte[] body, byte[] gzipBody, String etag) {
+        this.version = version;
+        this.body = body;
+        this.gzipBody = gzipBody;
+        this.etag = etag;
+    }
+
+    public static JsonSnapshot of(long version, byte[] body) {
+        return new JsonSnapshot(version, body, gzip(body), etag(body));
+    }
+
+    static byte[] gzip(byte[] body) {
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(gzipped)) {
+            gzip.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return gzipped.toByteArray();
+    }
+
+    /**
+     * @return a tag depending only on the content, so an unchanged body keeps validating after a rebuild
+     */
+    static String etag(byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return "\"" + Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(body.length) + "\"";
+    }
+
+    /**
+     * @return the pool data version this snapshot was built for
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public byte[] getGzipBody() {
+        return gzipBody;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+}
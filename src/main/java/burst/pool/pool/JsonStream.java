@@ -0,0 +1,133 @@
+package burst.pool.pool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * InputStream producing a JSON document piece by piece as it is read, so a response can be
+ * streamed to the client without building the whole document (or a Gson tree of it) in memory.
+ */
+public class JsonStream extends InputStream {
+
+    /**
+     * Writes the next part of the document.
+     */
+    public interface Producer {
+        /**
+         * @return false once the document is complete
+         */
+        boolean writeNext(JsonWriter writer) throws IOException;
+    }
+
+    public interface Element<T> {
+        void write(JsonWriter writer, T element) throws IOException;
+    }
+
+    public interface Fields {
+        void write(JsonWriter writer) throws IOException;
+    }
+
+    private final Buffer buffer = new Buffer();
+    private final JsonWriter writer;
+    private final Producer producer;
+    private boolean done;
+    private int position;
+
+    public JsonStream(Producer producer) {
+        this.producer = producer;
+        this.writer = new JsonWriter(new OutputStreamWriter(buffer, StandardCharsets.UTF_8));
+        // Same as Gson's JsonElement.toString, so NaN and infinite capacities are still written
+        this.writer.setLenient(true);
+    }
+
+    /**
+     * @return a producer of an object holding one array, written one element at a time, followed by the trailer fields
+     */
+    public static <T> Producer objectWithArray(String arrayName, Iterator<T> elements, Element<T> element, Fields trailer) {
+        return new Producer() {
+            private boolean started;
+
+            @Override
+            public boolean writeNext(JsonWriter writer) throws IOException {
+                if (!started) {
+                    writer.beginObject();
+                    writer.name(arrayName);
+                    writer.beginArray();
+                    started = true;
+                }
+                if (elements.hasNext()) {
+                    element.write(writer, elements.next());
+                    return true;
+                }
+                writer.endArray();
+                trailer.write(writer);
+                writer.endObject();
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return the whole document
+     */
+    public byte[] readAll() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        for (int read; (read = read(chunk, 0, chunk.length)) > 0; ) {
+            out.write(chunk, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private boolean fill() throws IOException {
+        while (position >= buffer.size()) {
+            if (done) {
+                return false;
+            }
+            buffer.reset();
+            position = 0;
+            done = !producer.writeNext(writer);
+            writer.flush();
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return buffer.bytes()[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int count = Math.min(len, buffer.size() - position);
+        System.arraycopy(buffer.bytes(), position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return buffer.size() - position;
+    }
+
+    private static final class Buffer extends ByteArrayOutputStream {
+        private byte[] bytes() {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package burst.pool.pool;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringTokenizer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import signumj.crypto.SignumCrypto;
+import signumj.entity.SignumAddress;
+import signumj.entity.SignumValue;
+import signumj.entity.response.Transaction;
+import signumj.entity.response.TransactionAppendix;
+import signumj.response.appendix.PlaintextMessageAppendix;
+import signumj.service.NodeService;
+import burst.pool.entity.MinerCommand;
+import burst.pool.miners.Miner;
+import burst.pool.storage.config.PropertyService;
+import burst.pool.storage.config.Props;
+import burst.pool.storage.persistent.StorageService;
+
+/**
+ * Applies the commands miners send in public messages to the pool account (share, pay and donate).
+ *
+ * The height up to which commands were applied is stored, and only the pool transactions above
+ * it are paged through, so every transaction is read once and none are missed however many
+ * arrive per block. Applied commands are recorded in the command log.
+ */
+public class MinerCommandProcessor {
+    private static final Logger logger = LoggerFactory.getLogger(MinerCommandProcessor.class);
+
+    private static final int PAGE_SIZE = 100;
+    private static final int MAX_PAGES = 50;
+    private static final Set<String> COMMANDS = new HashSet<>(Arrays.asList("share", "pay", "donate"));
+
+    private final NodeService nodeService;
+    private final PropertyService propertyService;
+    private final SignumCrypto burstCrypto = SignumCrypto.getInstance();
+
+    public MinerCommandProcessor(NodeService nodeService, PropertyService propertyService) {
+        this.nodeService = nodeService;
+        this.propertyService = propertyService;
+    }
+
+    private SignumAddress getPoolAddress() {
+        // Commands are always sent to the primary address
+        return burstCrypto.getAddressFromPassphrase(propertyService.getString(Props.passphrase));
+    }
+
+    /**
+     * @return the pool transactions with fromHeight < height <= toHeight, oldest first
+     */
+    public List<Transaction> fetchTransactions(int fromHeight, int toHeight) {
+        SignumAddress poolAddress = getPoolAddress();
+        List<Transaction> transactions = new ArrayList<>();
+        // New transactions shift the pages while we read them, so one can be listed twice
+        Set<Long> seen = new HashSet<>();
+        // The node lists the newest first, so page back until reaching the already applied heights
+        for (int page = 0; page < MAX_PAGES; page++) {
+            Transaction[] txs = nodeService.getAccountTransactions(poolAddress, page * PAGE_SIZE, (page + 1) * PAGE_SIZE - 1, false).blockingGet();
+            for (Transaction tx : txs) {
+                if (tx.getBlockHeight() <= fromHeight) {
+                    Collections.reverse(transactions);
+                    return transactions;
+                }
+                if (tx.getBlockHeight() <= toHeight && seen.add(tx.getId().getSignedLongId())) {
+                    transactions.add(tx);
+                }
+            }
+            if (txs.length < PAGE_SIZE) {
+                break;
+            }
+            if (page == MAX_PAGES - 1) {
+                logger.warn("Stopped looking for miner commands after {} transactions, older commands are skipped", MAX_PAGES * PAGE_SIZE);
+            }
+        }
+        Collections.reverse(transactions);
+        return transactions;
+    }
+
+    /**
+     * Applies the commands of the transactions above the last applied height and up to the given one.
+     * @param transactions as returned by {@link #fetchTransactions}, possibly with already applied ones
+     */
+    public void apply(StorageService transactionalStorageService, List<Transaction> transactions, int height) {
+        int lastCommandHeight = transactionalStorageService.getLastCommandHeight();
+        SignumAddress poolAddress = getPoolAddress();
+        for (Transaction tx : transactions) {
+            if (tx.getBlockHeight() <= lastCommandHeight || tx.getBlockHeight() > height) {
+                continue;
+            }
+            if (tx.getAppendages() == null || tx.getAppendages().length == 0 || !tx.getRecipient().equals(poolAddress)) {
+                continue;
+            }
+            Miner miner = transactionalStorageService.getMiner(tx.getSender());
+            if (miner == null) {
+                continue;
+            }
+            try {
+                TransactionAppendix append = tx.getAppendages()[0];
+                // Public messages only, so it is all on chain and we can easily verify
+                if (append instanceof PlaintextMessageAppendix) {
+                    applyMessage(transactionalStorageService, miner, tx, ((PlaintextMessageAppendix) append).getMessage());
+                }
+            } catch (Exception e) {
+                logger.error("Could not parse message, tx: " + tx.getId(), e);
+            }
+        }
+        transactionalStorageService.setLastCommandHeight(height);
+    }
+
+    private void applyMessage(StorageService transactionalStorageService, Miner miner, Transaction tx, String message) {
+        if (message == null) {
+            return;
+        }
+        // The last valid value of each command wins, so each is applied and logged once per transaction
+        Map<String, String> commands = new LinkedHashMap<>();
+        StringTokenizer tokens = new StringTokenizer(message, " ");
+        while (tokens.hasMoreElements()) {
+            String cmd = tokens.nextToken();
+            if (!COMMANDS.contains(cmd) || !tokens.hasMoreTokens()) {
+                continue;
+            }
+            String argument = tokens.nextToken();
+            if (isValid(cmd, argument)) {
+                commands.put(cmd, argument);
+            }
+        }
+
+        for (Map.Entry<String, String> command : commands.entrySet()) {
+            String cmd = command.getKey();
+            String argument = command.getValue();
+            // Logged first, a transaction seen again fails here before changing the miner
+            transactionalStorageService.addMinerCommand(new MinerCommand(tx.getId(), tx.getSender(), tx.getBlockHeight(), cmd, argument));
+            if (cmd.equals("share")) {
+                // Allows to configure the amount a miner wants to "share" with the pool
+                int sharePercent = Integer.parseInt(argument);
+                miner.setSharePercent(sharePercent);
+                logger.info("Miner " + miner.getAddress().getID() + " sharePercent=" + sharePercent);
+            } else if (cmd.equals("pay")) {
+                // Allows a miner to increase the minimum payout (less frequent payments)
+                SignumValue newMinimumPayout = SignumValue.fromSigna(argument);
+                miner.setMinimumPayout(newMinimumPayout);
+                logger.info("Miner " + miner.getAddress().getID() + " new minimum payout " + newMinimumPayout.toFormattedString());
+            } else if (cmd.equals("donate")) {
+                // Allows a miner to change the amount to donate
+                int donationPercent = Integer.parseInt(argument);
+                miner.setDonationPercent(donationPercent);
+                logger.info("Miner " + miner.getAddress().getID() + " donationPercent=" + donationPercent);
+            }
+        }
+    }
+
+    private boolean isValid(String cmd, String argument) {
+        if (argument.length() > MinerCommand.MAX_ARGUMENT_LENGTH) {
+            return false;
+        }
+        try {
+            if (cmd.equals("pay")) {
+                return SignumValue.fromSigna(argument).compareTo(SignumValue.fromSigna(propertyService.getFloat(Props.minimumMinimumPayout))) > 0;
+            }
+            int percent = Integer.parseInt(argument);
+            return percent >= 0 && percent <= 100;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
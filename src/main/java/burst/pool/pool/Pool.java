@@ -8,12 +8,10 @@ import signumj.entity.response.Block;
 import signumj.entity.response.FeeSuggestion;
 import signumj.entity.response.MiningInfo;
 import signumj.entity.response.Transaction;
-import signumj.entity.response.TransactionAppendix;
 import signumj.entity.response.http.MiningInfoResponse;
-import signumj.response.appendix.PlaintextMessageAppendix;
 import signumj.service.NodeService;
 import signumj.util.SignumUtils;
-import burst.pool.miners.Miner;
+import burst.pool.miners.DeadlineHistory;
 import burst.pool.miners.MinerTracker;
 import burst.pool.storage.config.Prop;
 import burst.pool.storage.config.PropertyService;
@@ -25,6 +23,7 @@ import com.google.gson.JsonObject;
 
 import io.reactivex.Completable;
 import io.reactivex.Observable;
+import io.reactivex.Single;
 import io.reactivex.disposables.CompositeDisposable;
 import io.reactivex.disposables.Disposable;
 import io.reactivex.schedulers.Schedulers;
@@ -32,11 +31,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 public class Pool {
@@ -49,27 +53,38 @@ public class Pool {
     private final StorageService storageService;
     private final PropertyService propertyService;
     private final MinerTracker minerTracker;
+    private final DeadlineHistory deadlineHistory;
+    private final DeadlineVerifier deadlineVerifier;
+    private final MinerCommandProcessor commandProcessor;
     private final CompositeDisposable disposables = new CompositeDisposable();
+    private final PoolEvents events = new PoolEvents();
+    private final Gson gson = SignumUtils.buildGson().create();
 
     private final Semaphore processBlockSemaphore = new Semaphore(1);
     private final Semaphore resetRoundSemaphore = new Semaphore(1);
-    private final Semaphore processDeadlineSemaphore = new Semaphore(12);
 
     // Variables
-    private final AtomicReference<Instant> roundStartTime = new AtomicReference<>();
-    private final AtomicReference<Submission> bestSubmission = new AtomicReference<>();
-    private final AtomicReference<BigInteger> bestDeadline = new AtomicReference<>();
-    private final AtomicReference<MiningInfo> miningInfo = new AtomicReference<>();
+    private final AtomicReference<RoundState> roundState = new AtomicReference<>(new RoundState(0, null, Instant.now(), serializeMiningInfo(null)));
+    // Completed with the new round and replaced on every round change, long-polling miners wait on it
+    private volatile CompletableFuture<RoundState> nextRound = new CompletableFuture<>();
     private final AtomicReference<SignumValue> transactionFee = new AtomicReference<>();
-    private final Set<SignumAddress> myRewardRecipients = new HashSet<>();
+    // Bumped on every round change and processed block, API snapshots are rebuilt when it changes
+    private final AtomicLong dataVersion = new AtomicLong();
+    // Reward recipient sets are replaced, never modified, so submissions can read them without locking
+    private volatile Set<SignumAddress> myRewardRecipients = Collections.emptySet();
     private final AtomicReference<ArrayList<Block>> recentlyForged = new AtomicReference<>();
-    private final Set<?> secondaryRewardRecipients[] = new HashSet<?>[Props.passphraseSecondary.length];
+    // Node data for the next block to process, fetched ahead while processing waits for the round to settle
+    private final AtomicReference<BlockPrefetch> blockPrefetch = new AtomicReference<>();
+    private volatile Set<?> secondaryRewardRecipients[] = new HashSet<?>[Props.passphraseSecondary.length];
 
-    public Pool(NodeService nodeService, StorageService storageService, PropertyService propertyService, MinerTracker minerTracker) {
+    public Pool(NodeService nodeService, StorageService storageService, PropertyService propertyService, MinerTracker minerTracker, DeadlineHistory deadlineHistory) {
         this.storageService = storageService;
         this.minerTracker = minerTracker;
+        this.deadlineHistory = deadlineHistory;
         this.propertyService = propertyService;
         this.nodeService = nodeService;
+        this.deadlineVerifier = new DeadlineVerifier(propertyService.getInt(Props.verifyThreads), propertyService.getInt(Props.verifyQueueSize));
+        this.commandProcessor = new MinerCommandProcessor(nodeService, propertyService);
         this.transactionFee.set(SignumValue.fromSigna(0.1));
         disposables.add(refreshMiningInfoThread());
         disposables.add(processBlocksThread());
@@ -106,8 +121,9 @@ public class Pool {
     }
 
     private void onMiningInfo(MiningInfo newMiningInfo) {
-        if (miningInfo.get() == null || !Arrays.equals(miningInfo.get().getGenerationSignature(), newMiningInfo.getGenerationSignature())
-                || !Objects.equals(miningInfo.get().getHeight(), newMiningInfo.getHeight())) {
+        MiningInfo miningInfo = roundState.get().getMiningInfo();
+        if (miningInfo == null || !Arrays.equals(miningInfo.getGenerationSignature(), newMiningInfo.getGenerationSignature())
+                || !Objects.equals(miningInfo.getHeight(), newMiningInfo.getHeight())) {
             logger.info("NEW BLOCK from {} (block {}, gensig {}, base target {}, avg commitment {})",
                     nodeService.getAddress(), newMiningInfo.getHeight(), burstCrypto.toHexString(newMiningInfo.getGenerationSignature()),
                     newMiningInfo.getBaseTarget(), newMiningInfo.getAverageCommitmentNQT());
@@ -126,26 +142,69 @@ public class Pool {
     private Completable processNextBlock() {
         return Completable.fromAction(() -> {
             StorageService transactionalStorageService = null;
+            // Errors before the permit is taken, such as reading the DB for the prefetch, must not release it
+            boolean permitAcquired = false;
             try {
-                if (miningInfo.get() == null || processBlockSemaphore.availablePermits() == 0 || miningInfo.get().getHeight() - 1 <= storageService.getLastProcessedBlock() + propertyService.getInt(Props.processLag)) {
+                RoundState round = roundState.get();
+                if (round.getMiningInfo() == null || processBlockSemaphore.availablePermits() == 0 || round.getMiningInfo().getHeight() - 1 <= storageService.getLastProcessedBlock() + propertyService.getInt(Props.processLag)) {
+                    return;
+                }
+
+                long backlog = round.getMiningInfo().getHeight() - 1 - propertyService.getInt(Props.processLag) - storageService.getLastProcessedBlock();
+                int catchUpThreshold = propertyService.getInt(Props.catchUpThreshold);
+                boolean catchingUp = catchUpThreshold > 0 && backlog > catchUpThreshold;
+                if (catchingUp && skipBlocksWithoutSubmissions(backlog)) {
                     return;
                 }
                 
+                // Requested while we wait below, so the node calls are done by the time the block is processed
+                int height = storageService.getLastProcessedBlock() + 1;
+                Single<BlockData> blockData = prefetchBlockData(height);
+
                 // Leave the process blocks only a minute after starting a new round
                 // TODO: add a configuration for this
-                Duration roundDuration = Duration.between(roundStartTime.get(), Instant.now());
-                if(roundDuration.toMillis() < 60000) {
+                Duration roundDuration = Duration.between(round.getStartTime(), Instant.now());
+                if(!catchingUp && roundDuration.toMillis() < 60000) {
                     return;
                 }
                 
                 propertyService.reloadIfModified();
+                BlockData data;
+                try {
+                    data = blockData.blockingGet();
+                } catch (Exception e) {
+                    logger.warn("Could not fetch the data to process block " + height, e);
+                    blockPrefetch.set(null);
+                    return;
+                }
+                if (round.getMiningInfo().getHeight() - 1 > height + 1 + propertyService.getInt(Props.processLag)) {
+                    // The next block is due too, fetch it while this one is processed
+                    prefetchBlockData(height + 1);
+                }
                 
-                logger.info("Started processing block {}", storageService.getLastProcessedBlock() + 1);
+                if (catchingUp) {
+                    logger.info("Started processing block {}, catching up with {} blocks behind", height, backlog);
+                } else {
+                    logger.info("Started processing block {}", height);
+                }
 
                 try {
                     processBlockSemaphore.acquire();
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
+                    return;
+                }
+                permitAcquired = true;
+
+                // Make sure all submissions for the block are in the DB before we read them
+                try {
+                    storageService.flushPendingWrites();
+                } catch (Exception e) {
+                    // Processing now would lose them on a crash, while the block is stored as processed
+                    logger.warn("Could not write the submissions of block " + height + ", will retry", e);
+                    permitAcquired = false;
+                    processBlockSemaphore.release();
+                    return;
                 }
 
                 try {
@@ -158,75 +217,21 @@ public class Pool {
 
                 minerTracker.setCurrentlyProcessingBlock(true);
                 
+                // Not prefetched, the fee and the recent blocks must be current when the block is processed
                 FeeSuggestion feeSuggestion = nodeService.suggestFee().blockingGet();
                 this.transactionFee.set(feeSuggestion.getStandardFee());
 
+                // Also the commands of blocks skipped while catching up, they are above the last applied height
+                commandProcessor.apply(transactionalStorageService, data.transactions, height);
+
                 List<StoredSubmission> storedSubmissions = transactionalStorageService.getBestSubmissionsForBlock(transactionalStorageService.getLastProcessedBlock() + 1);
                 if (storedSubmissions == null || storedSubmissions.isEmpty()) {
+                    permitAcquired = false;
                     onProcessedBlock(transactionalStorageService, false);
                     return;
                 }
                 
-                Block block = nodeService.getBlock(transactionalStorageService.getLastProcessedBlock() + 1).blockingGet();
-                
-                // Check for commands from miners (always to the primary address)
-                SignumAddress poolAddress = burstCrypto.getAddressFromPassphrase(propertyService.getString(Props.passphrase));
-                // Having 100 should be enough to not get past it
-                Transaction []txs = nodeService.getAccountTransactions(poolAddress, 0, 100, false).blockingGet();
-                for(Transaction tx : txs) {
-                    if(tx.getBlockHeight() != block.getHeight())
-                        continue;
-
-                    Miner miner = storageService.getMiner(tx.getSender());
-                    if(miner == null)
-                        continue;
-                    
-                    if(tx.getAppendages()!=null && tx.getAppendages().length > 0 && tx.getRecipient().equals(poolAddress)) {
-                        try {
-                            String message = null;
-                            TransactionAppendix append = tx.getAppendages()[0];
-                            // Public messages only, so it is all on chain and we can easily verify
-                            if(append instanceof PlaintextMessageAppendix) {
-                                PlaintextMessageAppendix appendMessage = (PlaintextMessageAppendix) append;
-                                message = appendMessage.getMessage();
-                            }
-                            if(message != null) {
-                                StringTokenizer tokens = new StringTokenizer(message, " ");
-                                while(tokens.hasMoreElements()) {
-                                    String cmd = tokens.nextToken();
-                                    
-                                    if(cmd.equals("share") && tokens.hasMoreTokens()) {
-                                        // Allows to configure the amount a miner wants to "share" with the pool
-                                        int sharePercent = Integer.parseInt(tokens.nextToken());
-                                        if(sharePercent >= 0 && sharePercent <= 100) {
-                                            miner.setSharePercent(sharePercent);
-                                            logger.info("Miner " + miner.getAddress().getID() + " sharePercent=" + sharePercent);
-                                        }
-                                    }
-                                    else if(cmd.equals("pay") && tokens.hasMoreTokens()) {
-                                        // Allows a miner to increase the minimum payout (less frequent payments)
-                                        SignumValue newMinimumPayout = SignumValue.fromSigna(tokens.nextToken());
-                                        if (newMinimumPayout.compareTo(SignumValue.fromSigna(propertyService.getFloat(Props.minimumMinimumPayout))) > 0) {
-                                            miner.setMinimumPayout(newMinimumPayout);
-                                            logger.info("Miner " + miner.getAddress().getID() + " new minimum payout " + newMinimumPayout.toFormattedString());
-                                        }
-                                    }
-                                    else if(cmd.equals("donate") && tokens.hasMoreTokens()) {
-                                        // Allows a miner to change the amount to donate
-                                        int donationPercent = Integer.parseInt(tokens.nextToken());
-                                        if(donationPercent >= 0 && donationPercent <= 100) {
-                                            miner.setDonationPercent(donationPercent);
-                                            logger.info("Miner " + miner.getAddress().getID() + " donationPercent=" + donationPercent);
-                                        }
-                                    }
-                                }
-                            }
-                        }
-                        catch (Exception e) {
-                            logger.error("Could not parse message, tx: " + tx.getId(), e);
-                        }
-                    }
-                }
+                Block block = data.block;
                 
                 ArrayList<Block> ourNewBlocks = new ArrayList<>();
                 try {
@@ -252,14 +257,18 @@ public class Pool {
                 }
                 if (won) {
                     minerTracker.onBlockWon(transactionalStorageService, block, block.getBlockReward().add(block.getTotalFee()));
+                    publishWonBlock(block);
                 } else {
                     if (myRewardRecipients.contains(block.getGenerator())) {
                         logger.error("Our miner forged but did not detect block won. Height " + block.getHeight());
                     }
                     minerTracker.onBlockNotWon(transactionalStorageService, block);
                 }
+                permitAcquired = false;
                 onProcessedBlock(transactionalStorageService, true);
             } catch (Exception e) {
+                // Fetched again on the next attempt, in case the node failed
+                blockPrefetch.set(null);
                 if (transactionalStorageService != null) {
                     logger.warn("Error processing block " + (transactionalStorageService.getLastProcessedBlock() + 1), e);
                     try {
@@ -269,12 +278,86 @@ public class Pool {
                         logger.error("Error rolling back transaction", e1);
                     }
                 }
-                minerTracker.setCurrentlyProcessingBlock(false);
-                processBlockSemaphore.release();
+                if (permitAcquired) {
+                    minerTracker.setCurrentlyProcessingBlock(false);
+                    processBlockSemaphore.release();
+                }
             }
         });
     }
     
+    /**
+     * Catching up on a backlog: marks the next blocks as processed in a single transaction for as long as
+     * there are no submissions for them, which is the case for the blocks missed while the pool was down.
+     * @return true if any block was skipped, false if the next block has submissions and must be processed
+     */
+    private boolean skipBlocksWithoutSubmissions(long backlog) {
+        if (!processBlockSemaphore.tryAcquire()) {
+            return true;
+        }
+        StorageService transactionalStorageService = null;
+        int skipped = 0;
+        try {
+            storageService.flushPendingWrites();
+            transactionalStorageService = storageService.beginTransaction();
+            long limit = Math.min(backlog, propertyService.getInt(Props.catchUpBatchSize));
+            while (skipped < limit) {
+                List<StoredSubmission> submissions = transactionalStorageService.getBestSubmissionsForBlock(transactionalStorageService.getLastProcessedBlock() + 1);
+                if (submissions != null && !submissions.isEmpty()) {
+                    break;
+                }
+                transactionalStorageService.incrementLastProcessedBlock();
+                skipped++;
+            }
+            transactionalStorageService.commitTransaction();
+            transactionalStorageService.close();
+        } catch (Exception e) {
+            logger.warn("Error skipping blocks while catching up", e);
+            if (transactionalStorageService != null) {
+                try {
+                    transactionalStorageService.rollbackTransaction();
+                    transactionalStorageService.close();
+                } catch (Exception e1) {
+                    logger.error("Error rolling back transaction", e1);
+                }
+            }
+            return true;
+        } finally {
+            processBlockSemaphore.release();
+        }
+        if (skipped > 0) {
+            // The skipped blocks are not swept, so move the needed heights along for the window to compact
+            deadlineHistory.retainFrom(storageService.getLastProcessedBlock() + 1 - propertyService.getInt(Props.nAvg));
+            dataVersion.incrementAndGet();
+            logger.info("Catching up: skipped {} blocks without submissions up to block {}, {} blocks left",
+                    skipped, storageService.getLastProcessedBlock(), backlog - skipped);
+        }
+        return skipped > 0;
+    }
+
+    /**
+     * @return the block at the height and the pool transactions up to it, requested now unless they already were.
+     * Both are fixed once the block is forged, so they can be fetched ahead.
+     */
+    private Single<BlockData> prefetchBlockData(int height) {
+        BlockPrefetch prefetch = blockPrefetch.get();
+        if (prefetch != null && prefetch.height == height) {
+            return prefetch.data;
+        }
+        int lastCommandHeight = storageService.getLastCommandHeight();
+        int commandsFromHeight = lastCommandHeight < 0 ? height - 1 : lastCommandHeight;
+        // All requested at once, each on its own I/O thread
+        Single<BlockData> data = Single.zip(
+                nodeService.getBlock(height).subscribeOn(Schedulers.io()),
+                Single.fromCallable(() -> commandProcessor.fetchTransactions(commandsFromHeight, height)).subscribeOn(Schedulers.io()),
+                BlockData::new)
+                .cache();
+        // Errors are seen by the processing that waits on it
+        data.subscribe(d -> {}, e -> {});
+        blockPrefetch.set(new BlockPrefetch(height, data));
+        return data;
+    }
+
     /**
      * @return the recently forged blocks, not yet processed
      */
@@ -285,17 +368,23 @@ public class Pool {
     private void onProcessedBlock(StorageService transactionalStorageService, boolean actuallyProcessed) {
         // TODO this needs to be done if block is behind nAvg otherwise fast block calculation breaks
         //storageService.removeBestSubmission(storageService.getLastProcessedBlock() + 1);
-        transactionalStorageService.incrementLastProcessedBlock();
         try {
-            transactionalStorageService.commitTransaction();
-            transactionalStorageService.close();
-        } catch (Exception e) {
-            logger.error("Error committing transaction", e);
+            transactionalStorageService.incrementLastProcessedBlock();
+            try {
+                transactionalStorageService.commitTransaction();
+                transactionalStorageService.close();
+            } catch (Exception e) {
+                logger.error("Error committing transaction", e);
+            }
+        } finally {
+            // Always given back here, the caller no longer holds the permit
+            minerTracker.setCurrentlyProcessingBlock(false);
+            processBlockSemaphore.release();
         }
-        minerTracker.setCurrentlyProcessingBlock(false);
-        processBlockSemaphore.release();
+        dataVersion.incrementAndGet();
         if (actuallyProcessed) {
-            minerTracker.payoutIfNeeded(storageService, transactionFee.get());
+            // The pending balances change once the payout is sent
+            minerTracker.payoutIfNeeded(storageService, transactionFee.get(), dataVersion::incrementAndGet);
         }
         
         logger.info("Finished processing block {}", storageService.getLastProcessedBlock());
@@ -303,16 +392,9 @@ public class Pool {
 
     private void resetRound(MiningInfo newMiningInfo) {
         
-        // Traffic flow - we want to stop new requests but let old ones finish before we go ahead.
+        // Only serializes concurrent resets, submissions never wait on this
         try {
-            // Lock the reset round semaphore to stop accepting new requests
             resetRoundSemaphore.acquire();
-            // Wait for all requests to be processed
-            while (processDeadlineSemaphore.getQueueLength() > 0) {
-                Thread.sleep(100);
-            }
-            // Lock the process block semaphore as we are going to be modifying bestSubmission
-            processDeadlineSemaphore.acquire();
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             return;
@@ -328,92 +410,134 @@ public class Pool {
             }
         }
         
-        bestSubmission.set(null);
-        bestDeadline.set(BigInteger.valueOf(Long.MAX_VALUE));
-        roundStartTime.set(Instant.now());
-        miningInfo.set(newMiningInfo);
+        // Swapping the round state atomically starts the new round, in-flight submissions for the
+        // previous epoch will fail their compare-and-set and be rejected
+        MiningInfo roundMiningInfo = newMiningInfo;
+        byte[] miningInfoResponse = serializeMiningInfo(roundMiningInfo);
+        RoundState previousState = roundState.getAndUpdate(previous -> previous.next(roundMiningInfo, miningInfoResponse));
+        RoundState round = roundState.get();
+        if (previousState.getMiningInfo() != null) {
+            logger.info("Submissions for block {}: {}", previousState.getMiningInfo().getHeight(), previousState.getSubmissionFilter().getStats());
+        }
+        dataVersion.incrementAndGet();
+        CompletableFuture<RoundState> previousRound = nextRound;
+        nextRound = new CompletableFuture<>();
+        previousRound.complete(round);
+        if (events.hasSubscribers()) {
+            events.publish(PoolEvents.ROUND, getCurrentRoundInfo(gson).toString());
+        }
+        try {
+            storageService.flushPendingWrites();
+        } catch (Exception e) {
+            logger.warn("Could not write the best submissions of the previous round, will retry", e);
+        }
+        if (roundMiningInfo != null) {
+            minerTracker.refreshMinerAccounts(storageService, (int) roundMiningInfo.getHeight());
+        }
 
         // get the current reward recipient for the multiple pool IDs and transfer balance to primary if any
         try {
             // First for the primary account
             SignumAddress primaryAddress = burstCrypto.getAddressFromPassphrase(propertyService.getString(Props.passphrase));
             SignumAddress[] rewardRecipients = nodeService.getAccountsWithRewardRecipient(primaryAddress).blockingGet();
-            myRewardRecipients.clear();
-            myRewardRecipients.addAll(Arrays.asList(rewardRecipients));
+            myRewardRecipients = new HashSet<>(Arrays.asList(rewardRecipients));
             
             // Next for the secondary accounts (if any)
-            for (int i = 0; i < Props.passphraseSecondary.length; i++) {
-                @SuppressWarnings("unchecked")
-                Prop<String> passphraseProp = (Prop<String>) Props.passphraseSecondary[i];
-                String passphrase = propertyService.getString(passphraseProp);
-                if(passphrase == null || passphrase.length() == 0)
-                    break;
-                
-                SignumAddress secondaryAddress = burstCrypto.getAddressFromPassphrase(passphrase);
-                rewardRecipients = nodeService.getAccountsWithRewardRecipient(secondaryAddress).blockingGet();
-                
-                @SuppressWarnings("unchecked")
-                Set<SignumAddress> mySecondaryRewardRecipients = (Set<SignumAddress>) secondaryRewardRecipients[i];
-                mySecondaryRewardRecipients.clear();
-                mySecondaryRewardRecipients.addAll(Arrays.asList(rewardRecipients));
-                
-                // Check for balances on the secondary pools and transfer to the primary one, every processLag/2 blocks
-                int transferBlocks = propertyService.getInt(Props.processLag)/2;
-                if(miningInfo.get()!=null) {
-                    long mod = miningInfo.get().getHeight() % (transferBlocks);
-                    if(mod == 0L) {
-                        Account balance = nodeService.getAccount(secondaryAddress, null, null, null).blockingGet();
-                        if(balance.getBalance().compareTo(SignumValue.fromSigna(propertyService.getFloat(Props.minimumMinimumPayout))) > 0) {
-                            SignumValue amountToSend = balance.getBalance().subtract(getTransactionFee());
-                            byte[] unsignedBytes = nodeService.generateTransaction(primaryAddress, burstCrypto.getPublicKey(passphrase), amountToSend,
-                                    getTransactionFee(), transferBlocks, null).blockingGet();
-                            byte [] signedBytes = burstCrypto.signTransaction(passphrase, unsignedBytes);
-                            nodeService.broadcastTransaction(signedBytes).blockingGet();
-                            logger.info("Balance of " + amountToSend.toFormattedString() + " from secondary " + secondaryAddress.toString() + " transfered to primary");
+            Set<?> newSecondaryRewardRecipients[] = secondaryRewardRecipients.clone();
+            try {
+                for (int i = 0; i < Props.passphraseSecondary.length; i++) {
+                    @SuppressWarnings("unchecked")
+                    Prop<String> passphraseProp = (Prop<String>) Props.passphraseSecondary[i];
+                    String passphrase = propertyService.getString(passphraseProp);
+                    if(passphrase == null || passphrase.length() == 0)
+                        break;
+                    
+                    SignumAddress secondaryAddress = burstCrypto.getAddressFromPassphrase(passphrase);
+                    rewardRecipients = nodeService.getAccountsWithRewardRecipient(secondaryAddress).blockingGet();
+                    newSecondaryRewardRecipients[i] = new HashSet<>(Arrays.asList(rewardRecipients));
+                    
+                    // Check for balances on the secondary pools and transfer to the primary one, every processLag/2 blocks
+                    int transferBlocks = propertyService.getInt(Props.processLag)/2;
+                    if(round.getMiningInfo()!=null) {
+                        long mod = round.getMiningInfo().getHeight() % (transferBlocks);
+                        if(mod == 0L) {
+                            Account balance = nodeService.getAccount(secondaryAddress, null, null, null).blockingGet();
+                            if(balance.getBalance().compareTo(SignumValue.fromSigna(propertyService.getFloat(Props.minimumMinimumPayout))) > 0) {
+                                SignumValue amountToSend = balance.getBalance().subtract(getTransactionFee());
+                                byte[] unsignedBytes = nodeService.generateTransaction(primaryAddress, burstCrypto.getPublicKey(passphrase), amountToSend,
+                                        getTransactionFee(), transferBlocks, null).blockingGet();
+                                byte [] signedBytes = burstCrypto.signTransaction(passphrase, unsignedBytes);
+                                nodeService.broadcastTransaction(signedBytes).blockingGet();
+                                logger.info("Balance of " + amountToSend.toFormattedString() + " from secondary " + secondaryAddress.toString() + " transfered to primary");
+                            }
                         }
                     }
                 }
+            } finally {
+                // Published once complete (also when a transfer failed), the array is never modified after
+                secondaryRewardRecipients = newSecondaryRewardRecipients;
             }
         }
         catch (Exception e) {
             logger.error("Error fetching pool's reward recipients or transfering from secondary pools", e);
         }
         
-        // Unlock to signal we have finished modifying bestSubmission
-        processDeadlineSemaphore.release();
-        // Unlock to start accepting requests again
         resetRoundSemaphore.release();
     }
 
-    BigInteger checkNewSubmission(Submission submission, String userAgent) throws SubmissionException {
-        if (miningInfo.get() == null) {
+    /**
+     * @param blockHeight the height the miner submitted for, or -1 if it did not say
+     */
+    BigInteger checkNewSubmission(Submission submission, String userAgent, long blockHeight) throws SubmissionException {
+        // Everything below works on this snapshot, a concurrent resetRound does not block us
+        RoundState round = roundState.get();
+        SubmissionFilter filter = round.getSubmissionFilter();
+        MiningInfo localMiningInfo = round.getMiningInfo();
+        if (localMiningInfo == null) {
+            filter.reject(SubmissionFilter.Rejection.NO_MINING_INFO);
             throw new SubmissionException("Pool does not have mining info");
         }
+        if (blockHeight >= 0 && blockHeight != localMiningInfo.getHeight()) {
+            filter.reject(SubmissionFilter.Rejection.STALE_HEIGHT);
+            throw new SubmissionException("Submitted on wrong height");
+        }
 
         boolean recipientSet = myRewardRecipients.contains(submission.getMiner());
-        for (int i = 0; i < secondaryRewardRecipients.length; i++) {
+        Set<?> localSecondaryRewardRecipients[] = secondaryRewardRecipients;
+        for (int i = 0; i < localSecondaryRewardRecipients.length; i++) {
             if(recipientSet)
                 break;
             
             @SuppressWarnings("unchecked")
-            Set<SignumAddress> mySecondaryRewardRecipients = (Set<SignumAddress>) secondaryRewardRecipients[i];
+            Set<SignumAddress> mySecondaryRewardRecipients = (Set<SignumAddress>) localSecondaryRewardRecipients[i];
             recipientSet = mySecondaryRewardRecipients.contains(submission.getMiner());
         }
         if (!recipientSet) {
+            filter.reject(SubmissionFilter.Rejection.NO_REWARD_RECIPIENT);
             throw new SubmissionException("Reward recipient not set to pool");
         }
 
-        // If we are resetting the request must be for the previous round and no longer matters - reject
-        if (resetRoundSemaphore.availablePermits() < 0) {
-            throw new SubmissionException("Cannot submit - new round starting");
+        // Repeated nonces were already verified and handed to the miner tracker this round
+        long accountId = submission.getMiner().getSignumID().getSignedLongId();
+        long nonce = submission.getNonce().longValue();
+        BigInteger knownDeadline = filter.getKnownDeadline(accountId, nonce);
+        if (knownDeadline != null) {
+            return knownDeadline;
         }
 
-        MiningInfo localMiningInfo = miningInfo.get();
-        BigInteger deadline = burstCrypto.calculateDeadline(submission.getMiner(), Long.parseUnsignedLong(submission.getNonce().toString()), localMiningInfo.getGenerationSignature(), burstCrypto.calculateScoop(localMiningInfo.getGenerationSignature(), localMiningInfo.getHeight()), localMiningInfo.getBaseTarget(), 2);
+        BigInteger deadline;
+        try {
+            deadline = deadlineVerifier.calculateDeadline(submission, localMiningInfo);
+        } catch (PoolOverloadedException e) {
+            filter.reject(SubmissionFilter.Rejection.OVERLOADED);
+            throw e;
+        }
 
         // With PoC+ we have up to a factor of 8, since miner software is unaware of that we need to accept it up to 8 times larger
         long factor = localMiningInfo.getHeight() >= propertyService.getInt(Props.pocPlusBlock) ? 8 : 1;
         if (deadline.compareTo(BigInteger.valueOf(propertyService.getLong(Props.maxDeadline) * factor)) >= 0) {
+            filter.onVerified(accountId, nonce, null);
+            filter.reject(SubmissionFilter.Rejection.DEADLINE_TOO_HIGH);
             throw new SubmissionException("Deadline exceeds maximum allowed deadline");
         }
 
@@ -421,38 +545,36 @@ public class Pool {
             logger.debug("New submission from {} of nonce {}, calculated deadline {} seconds.", submission.getMiner(), submission.getNonce(), deadline.toString());
         }
 
-        try {
-            try {
-                processDeadlineSemaphore.acquire();
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new SubmissionException("Server Interrupted");
-            }
-            
-            BigInteger newDeadline = minerTracker.onMinerSubmittedDeadline(storageService, submission.getMiner(), deadline, miningInfo.get(), userAgent);
+        BigInteger newDeadline = minerTracker.onMinerSubmittedDeadline(storageService, submission.getMiner(), deadline, localMiningInfo, userAgent);
 
-            if (bestSubmission.get() != null) {
-                if (logger.isDebugEnabled()) {
-                    logger.debug("Best deadline is {}, new deadline is {}", bestDeadline.get(), newDeadline);
-                }
-                if (newDeadline.compareTo(bestDeadline.get()) < 0) {
-                    logger.debug("Newer deadline is better! Submitting...");
-                    onNewBestDeadline(miningInfo.get().getHeight(), submission, newDeadline);
+        // Compare-and-set loop on the round state, only the thread that installs a better deadline submits it
+        while (true) {
+            RoundState current = roundState.get();
+            if (current.getEpoch() != round.getEpoch()) {
+                // The request was for the previous round and no longer matters - reject
+                filter.reject(SubmissionFilter.Rejection.ROUND_ENDED);
+                throw new SubmissionException("Cannot submit - new round starting");
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("Best deadline is {}, new deadline is {}", current.getBestDeadline(), newDeadline);
+            }
+            if (!current.isBetter(newDeadline)) {
+                filter.onVerified(accountId, nonce, deadline);
+                return deadline;
+            }
+            if (roundState.compareAndSet(current, current.withBestSubmission(submission, newDeadline))) {
+                logger.debug("Newer deadline is better! Submitting...");
+                filter.onVerified(accountId, nonce, deadline);
+                onNewBestDeadline(localMiningInfo.getHeight(), submission, newDeadline);
+                if (events.hasSubscribers()) {
+                    events.publish(PoolEvents.BEST_DEADLINE, getCurrentRoundInfo(gson).toString());
                 }
-            } else {
-                logger.debug("This is the first deadline, submitting...");
-                onNewBestDeadline(miningInfo.get().getHeight(), submission, newDeadline);
+                return deadline;
             }
-
-            return deadline;
-        } finally {
-            processDeadlineSemaphore.release();
         }
     }
 
     private void onNewBestDeadline(long blockHeight, Submission submission, BigInteger deadline) {
-        bestSubmission.set(submission);
-        bestDeadline.set(deadline);
         submitDeadline(submission);
         storageService.addBestSubmissionForBlock(blockHeight, new StoredSubmission(submission.getMiner(), submission.getNonce(), deadline.longValue()));
     }
@@ -464,11 +586,12 @@ public class Pool {
         if(myRewardRecipients.contains(submission.getMiner()))
             passphrase = propertyService.getString(Props.passphrase);
         
-        for (int i = 0; i < secondaryRewardRecipients.length; i++) {
+        Set<?> localSecondaryRewardRecipients[] = secondaryRewardRecipients;
+        for (int i = 0; i < localSecondaryRewardRecipients.length; i++) {
             if(passphrase != null)
                 break;
             
-            Set<SignumAddress> mySecondaryRewardRecipients = (Set<SignumAddress>) secondaryRewardRecipients[i];
+            Set<SignumAddress> mySecondaryRewardRecipients = (Set<SignumAddress>) localSecondaryRewardRecipients[i];
             if(mySecondaryRewardRecipients.contains(submission.getMiner()))
                 passphrase = propertyService.getString((Prop<String>) Props.passphraseSecondary[i]);
         }
@@ -486,34 +609,96 @@ public class Pool {
         logger.error("Error submitting nonce to node", t);
     }
 
+    private void publishWonBlock(Block block) {
+        if (!events.hasSubscribers()) {
+            return;
+        }
+        JsonObject wonBlock = new JsonObject();
+        wonBlock.addProperty("height", block.getHeight());
+        wonBlock.addProperty("id", block.getId().getID());
+        wonBlock.addProperty("generator", block.getGenerator().getID());
+        wonBlock.addProperty("generatorRS", block.getGenerator().getFullAddress());
+        wonBlock.addProperty("reward", block.getBlockReward().add(block.getTotalFee()).toUnformattedString());
+        events.publish(PoolEvents.WON_BLOCK, wonBlock.toString());
+    }
+
+    /**
+     * @return the push channel for round, best deadline and won block events
+     */
+    public PoolEvents getEvents() {
+        return events;
+    }
+
+    /**
+     * @return a number that changes whenever a round starts, a block is processed or miners are paid out
+     */
+    public long getDataVersion() {
+        return dataVersion.get();
+    }
+
+    private static byte[] serializeMiningInfo(MiningInfo miningInfo) {
+        if (miningInfo == null) {
+            return "null".getBytes(StandardCharsets.UTF_8);
+        }
+        JsonObject miningInfoObj = new JsonObject();
+        miningInfoObj.addProperty("height", Long.toUnsignedString(miningInfo.getHeight()));
+        miningInfoObj.addProperty("generationSignature", SignumCrypto.getInstance().toHexString(miningInfo.getGenerationSignature()));
+        miningInfoObj.addProperty("baseTarget", Long.toUnsignedString(miningInfo.getBaseTarget()));
+        miningInfoObj.addProperty("averageCommitmentNQT", Long.toUnsignedString(miningInfo.getAverageCommitmentNQT()));
+        return miningInfoObj.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Long-polling for miners: if the round is still at the known height, waits up to the timeout for the next one.
+     * @return the serialized getMiningInfo response of the current round
+     */
+    byte[] getMiningInfoResponse(long knownHeight, long timeoutMillis) {
+        // Read the future before the round, a round change in between is then seen on one or the other
+        CompletableFuture<RoundState> next = nextRound;
+        RoundState round = roundState.get();
+        if (timeoutMillis <= 0 || round.getMiningInfo() == null || round.getMiningInfo().getHeight() != knownHeight) {
+            return round.getMiningInfoResponse();
+        }
+        try {
+            return next.get(timeoutMillis, TimeUnit.MILLISECONDS).getMiningInfoResponse();
+        } catch (TimeoutException | ExecutionException e) {
+            return roundState.get().getMiningInfoResponse();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return roundState.get().getMiningInfoResponse();
+        }
+    }
+
     MiningInfo getMiningInfo() {
-        return miningInfo.get();
+        return roundState.get().getMiningInfo();
     }
 
     public JsonObject getCurrentRoundInfo(Gson gson) {
+        RoundState round = roundState.get();
+        Submission bestSubmission = round.getBestSubmission();
         JsonObject jsonObject = new JsonObject();
-        jsonObject.addProperty("roundStart", roundStartTime.get().getEpochSecond());
+        jsonObject.addProperty("roundStart", round.getStartTime().getEpochSecond());
 
-        if (bestSubmission.get() != null) {
-        	BigInteger deadline = bestDeadline.get();
+        if (bestSubmission != null) {
+        	BigInteger deadline = round.getBestDeadline();
        		deadline = BigInteger.valueOf((long)(Math.log(deadline.doubleValue()) * LN_FACTOR));
        		
             JsonObject bestDeadlineJson = new JsonObject();
             bestDeadlineJson.addProperty("explorer", propertyService.getString(Props.siteExplorerURL) + propertyService.getString(Props.siteExplorerAccount));
-            bestDeadlineJson.addProperty("miner", bestSubmission.get().getMiner().getID());
-            bestDeadlineJson.addProperty("minerRS", bestSubmission.get().getMiner().getFullAddress());
-            Miner miner = storageService.getMiner(bestSubmission.get().getMiner());
+            bestDeadlineJson.addProperty("miner", bestSubmission.getMiner().getID());
+            bestDeadlineJson.addProperty("minerRS", bestSubmission.getMiner().getFullAddress());
+            Miner miner = storageService.getMiner(bestSubmission.getMiner());
             if(miner != null && !Objects.equals(miner.getName(), "")) {
                 bestDeadlineJson.addProperty("name", miner.getName());
             }
-            bestDeadlineJson.addProperty("nonce", bestSubmission.get().getNonce());
+            bestDeadlineJson.addProperty("nonce", bestSubmission.getNonce());
             bestDeadlineJson.addProperty("deadline", deadline);
             jsonObject.add("bestDeadline", bestDeadlineJson);
         } else {
             jsonObject.add("bestDeadline", JsonNull.INSTANCE);
         }
 
-        MiningInfo miningInfo = Pool.this.miningInfo.get();
+        MiningInfo miningInfo = round.getMiningInfo();
         if (miningInfo != null) {
             long baseTarget = miningInfo.getBaseTarget();
             baseTarget = (long)(baseTarget * 1.83f);
@@ -524,6 +709,26 @@ public class Pool {
         return jsonObject;
     }
 
+    private static final class BlockData {
+        private final Block block;
+        private final List<Transaction> transactions;
+
+        private BlockData(Block block, List<Transaction> transactions) {
+            this.block = block;
+            this.transactions = transactions;
+        }
+    }
+
+    private static final class BlockPrefetch {
+        private final int height;
+        private final Single<BlockData> data;
+
+        private BlockPrefetch(int height, Single<BlockData> data) {
+            this.height = height;
+            this.data = data;
+        }
+    }
+
     public SignumAddress getAccount() {
         return burstCrypto.getAddressFromPassphrase(propertyService.getString(Props.passphrase));
     }
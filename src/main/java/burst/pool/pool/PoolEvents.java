@@ -0,0 +1,124 @@
+package burst.pool.pool;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes pool events (new round, new best deadline, block won) to Server-Sent Events subscribers,
+ * so dashboards do not need to poll for them.
+ */
+public class PoolEvents {
+    public static final String ROUND = "round";
+    public static final String BEST_DEADLINE = "bestDeadline";
+    public static final String WON_BLOCK = "wonBlock";
+
+    private static final int QUEUE_SIZE = 64;
+    private static final long KEEP_ALIVE_MILLIS = 15000;
+    private static final byte[] KEEP_ALIVE = ": keep-alive\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final Set<EventStream> subscribers = ConcurrentHashMap.newKeySet();
+
+    public boolean hasSubscribers() {
+        return !subscribers.isEmpty();
+    }
+
+    /**
+     * Sends the event to all subscribers, serialized once for all of them.
+     * @param data a single line of JSON
+     */
+    public void publish(String event, String data) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        byte[] message = ("event: " + event + "\ndata: " + data + "\n\n").getBytes(StandardCharsets.UTF_8);
+        for (EventStream subscriber : subscribers) {
+            subscriber.offer(message);
+        }
+    }
+
+    /**
+     * @param onClose run once when the stream is closed
+     * @return the event stream of a new subscriber, it unsubscribes when closed
+     */
+    public InputStream subscribe(Runnable onClose) {
+        EventStream stream = new EventStream(onClose);
+        subscribers.add(stream);
+        return stream;
+    }
+
+    private final class EventStream extends InputStream {
+        private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        private final Runnable onClose;
+        private byte[] current = new byte[0];
+        private int position;
+        private volatile boolean closed;
+
+        private EventStream(Runnable onClose) {
+            this.onClose = onClose;
+        }
+
+        private void offer(byte[] message) {
+            if (!queue.offer(message)) {
+                // Too slow to keep up, the client will reconnect and fetch the current state
+                close();
+            }
+        }
+
+        private boolean fill() {
+            while (position >= current.length) {
+                if (closed) {
+                    return false;
+                }
+                try {
+                    byte[] message = queue.poll(KEEP_ALIVE_MILLIS, TimeUnit.MILLISECONDS);
+                    // A comment line now and then, so a client that went away is noticed
+                    current = message != null ? message : KEEP_ALIVE;
+                    position = 0;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    close();
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int read() {
+            if (!fill()) {
+                return -1;
+            }
+            return current[position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int count = Math.min(len, current.length - position);
+            System.arraycopy(current, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public synchronized void close() {
+            // Closed by a slow subscriber overflowing and again by the server
+            if (closed) {
+                return;
+            }
+            closed = true;
+            subscribers.remove(this);
+            onClose.run();
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package burst.pool.pool;
+
+/**
+ * The submission was not verified because the pool has too much work queued, it can be sent again.
+ */
+public class PoolOverloadedException extends SubmissionException {
+    private static final long serialVersionUID = -3521847096617035243L;
+
+    public PoolOverloadedException(String message) {
+        super(message);
+    }
+}
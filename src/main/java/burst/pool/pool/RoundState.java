@@ -0,0 +1,87 @@
+package burst.pool.pool;
+
+import signumj.entity.response.MiningInfo;
+
+import java.math.BigInteger;
+import java.time.Instant;
+
+/**
+ * Immutable snapshot of the current round. A new instance is swapped in by the pool
+ * whenever the round changes or a better deadline is found, so readers always see
+ * a consistent mining info, start time and best submission.
+ */
+public class RoundState {
+    private static final BigInteger NO_DEADLINE = BigInteger.valueOf(Long.MAX_VALUE);
+
+    private final long epoch;
+    private final MiningInfo miningInfo;
+    private final Instant startTime;
+    private final Submission bestSubmission;
+    private final BigInteger bestDeadline;
+    private final byte[] miningInfoResponse;
+    private final SubmissionFilter submissionFilter;
+
+    public RoundState(long epoch, MiningInfo miningInfo, Instant startTime, byte[] miningInfoResponse) {
+        this(epoch, miningInfo, startTime, miningInfoResponse, new SubmissionFilter(), null, NO_DEADLINE);
+    }
+
+    private RoundState(long epoch, MiningInfo miningInfo, Instant startTime, byte[] miningInfoResponse, SubmissionFilter submissionFilter,
+                       Submission bestSubmission, BigInteger bestDeadline) {
+        this.epoch = epoch;
+        this.miningInfo = miningInfo;
+        this.startTime = startTime;
+        this.miningInfoResponse = miningInfoResponse;
+        this.submissionFilter = submissionFilter;
+        this.bestSubmission = bestSubmission;
+        this.bestDeadline = bestDeadline;
+    }
+
+    public RoundState next(MiningInfo newMiningInfo, byte[] newMiningInfoResponse) {
+        return new RoundState(epoch + 1, newMiningInfo, Instant.now(), newMiningInfoResponse);
+    }
+
+    public RoundState withBestSubmission(Submission submission, BigInteger deadline) {
+        return new RoundState(epoch, miningInfo, startTime, miningInfoResponse, submissionFilter, submission, deadline);
+    }
+
+    /**
+     * @return true if the given deadline beats the current best for this round
+     */
+    public boolean isBetter(BigInteger deadline) {
+        return bestSubmission == null || deadline.compareTo(bestDeadline) < 0;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public MiningInfo getMiningInfo() {
+        return miningInfo;
+    }
+
+    /**
+     * @return the serialized getMiningInfo response for miners, shared by all requests of the round (do not modify)
+     */
+    public byte[] getMiningInfoResponse() {
+        return miningInfoResponse;
+    }
+
+    /**
+     * @return the pre-filter of the submissions to this round, shared by all its states
+     */
+    public SubmissionFilter getSubmissionFilter() {
+        return submissionFilter;
+    }
+
+    public Instant getStartTime() {
+        return startTime;
+    }
+
+    public Submission getBestSubmission() {
+        return bestSubmission;
+    }
+
+    public BigInteger getBestDeadline() {
+        return bestDeadline;
+    }
+}
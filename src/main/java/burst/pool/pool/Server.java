@@ -1,50 +1,44 @@
 package burst.pool.pool;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
 import java.math.BigInteger;
 import java.net.SocketException;
-import java.net.URLConnection;
-import java.nio.charset.StandardCharsets;
 import java.security.KeyStore;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLServerSocketFactory;
 
-import org.ehcache.Cache;
-import org.ehcache.config.builders.CacheConfigurationBuilder;
-import org.ehcache.config.builders.CacheManagerBuilder;
-import org.ehcache.config.builders.ResourcePoolsBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonNull;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
 
-import signumj.crypto.SignumCrypto;
 import signumj.entity.SignumAddress;
-import signumj.entity.SignumValue;
 import signumj.entity.response.Block;
 import signumj.entity.response.MiningInfo;
 import signumj.util.SignumUtils;
 import burst.pool.Constants;
+import burst.pool.entity.WonBlock;
 import burst.pool.miners.Deadline;
 import burst.pool.miners.Miner;
 import burst.pool.storage.config.PropertyService;
@@ -55,6 +49,7 @@ import fi.iki.elonen.NanoHTTPD;
 public class Server extends NanoHTTPD {
     private static final Logger logger = LoggerFactory.getLogger(Server.class);
 
+    private static final String EVENT_STREAM = "text/event-stream";
     private static final HashMap<String, String> mimeTypesAllowed = new HashMap<>();
     static {
         mimeTypesAllowed.put("ico", "image/x-icon");
@@ -72,29 +67,53 @@ public class Server extends NanoHTTPD {
     private final PropertyService propertyService;
     private final Pool pool;
     private final Gson gson = SignumUtils.buildGson().create();
-    private final SignumCrypto burstCrypto = SignumCrypto.getInstance();
-    private final Cache<String, String> fileCache;
+    private final StaticAssets staticAssets;
+    private final AtomicReference<JsonSnapshot> minersSnapshot = new AtomicReference<>();
+    private final AtomicReference<JsonSnapshot> topMinersSnapshot = new AtomicReference<>();
 
-    private final File htmlRoot;
+    private final boolean serveMining;
+    private final boolean serveWeb;
+    // Long-polls allowed at once on a fixed worker pool, null when every connection has its own thread
+    private final Semaphore longPolls;
+    // Event streams allowed at once on a fixed worker pool, each holds a thread while connected
+    private final Semaphore eventStreams;
 
     private String apiAllowOrign;
 
+    /**
+     * Serves both the mining (/burst) and web (/api and site) requests on the server port.
+     */
     public Server(StorageService storageService, PropertyService propertyService, Pool pool) {
-        super(propertyService.getInt(Props.serverPort));
+        this(storageService, propertyService, pool, propertyService.getInt(Props.serverPort), true, true);
+    }
+
+    /**
+     * A mining only server gets its own bounded, higher priority worker pool, so web traffic cannot slow down submissions.
+     */
+    public Server(StorageService storageService, PropertyService propertyService, Pool pool, int port, boolean serveMining, boolean serveWeb) {
+        super(port);
         this.storageService = storageService;
         this.propertyService = propertyService;
         this.pool = pool;
-        this.fileCache = propertyService.getBoolean(Props.siteDisableCache) ? null :
-            CacheManagerBuilder.newCacheManagerBuilder()
-            .withCache("file", CacheConfigurationBuilder.newCacheConfigurationBuilder(String.class, String.class, ResourcePoolsBuilder.heap(1024*1024)))
-            .build(true)
-            .getCache("file", String.class, String.class);
+        this.serveMining = serveMining;
+        this.serveWeb = serveWeb;
         this.apiAllowOrign = propertyService.getString(Props.apiAllowOrign);
+        int workerThreads = serveWeb ? propertyService.getInt(Props.serverThreads) : propertyService.getInt(Props.miningThreads);
+        if (!serveWeb) {
+            setAsyncRunner(new WorkerPoolRunner("mining", workerThreads, propertyService.getInt(Props.miningQueueSize), Thread.NORM_PRIORITY + 2));
+        } else if (workerThreads > 0) {
+            setAsyncRunner(new WorkerPoolRunner("http", workerThreads, propertyService.getInt(Props.serverQueueSize), Thread.NORM_PRIORITY));
+        }
+        // Waiting miners must leave most of the threads to the submissions
+        this.longPolls = workerThreads > 0 ? new Semaphore(workerThreads / 4) : null;
+        // Only the web server streams events, never the mining one
+        this.eventStreams = serveWeb && workerThreads > 0 ? new Semaphore(workerThreads / 4) : null;
 
-        this.htmlRoot = new File(propertyService.getString(Props.siteRoot));
+        this.staticAssets = new StaticAssets(propertyService, new File(propertyService.getString(Props.siteRoot)));
 
+        // The certificate is for the site, miners on a port of their own connect without TLS
         String certbotPath = propertyService.getString(Props.letsencryptPath);
-        if(certbotPath != null && certbotPath.length() > 0) {
+        if(serveWeb && certbotPath != null && certbotPath.length() > 0) {
             String keypath = propertyService.getString(Props.keyStorePath);
             String keypass = propertyService.getString(Props.keyStorePass);
             File keyfilePath = new File(keypath);
@@ -155,9 +174,14 @@ public class Server extends NanoHTTPD {
             session.parseBody(new HashMap<>());
             params.putAll(session.getParms());
             if (session.getUri().startsWith("/burst")) {
-                return NanoHTTPD.newFixedLengthResponse(Response.Status.OK, "application/json", handleBurstApiCall(session, params));
+                if (!serveMining) {
+                    return NanoHTTPD.newFixedLengthResponse(Response.Status.NOT_FOUND, "application/json", "404 not found");
+                }
+                return handleBurstApiCall(session, params);
+            } else if (!serveWeb) {
+                return NanoHTTPD.newFixedLengthResponse(Response.Status.NOT_FOUND, "text/html", "<h1>Not Found</h1>");
             } else if (session.getUri().startsWith("/api")) {
-                Response resp = NanoHTTPD.newFixedLengthResponse(Response.Status.OK, "application/json", handleApiCall(session, params));
+                Response resp = handleApiCall(session, params);
                 if(apiAllowOrign.length() > 0) {
                     // CORS handling
                     resp.addHeader("Access-Control-Allow-Origin", apiAllowOrign);
@@ -180,7 +204,135 @@ public class Server extends NanoHTTPD {
         }
     }
 
-    private String handleBurstApiCall(IHTTPSession session, Map<String, String> params) {
+    @Override
+    protected boolean useGzipWhenAccepted(Response r) {
+        // Snapshots are sent already compressed, and a gzip stream would hold events back
+        return r.getHeader("content-encoding") == null && !EVENT_STREAM.equals(r.getMimeType()) && super.useGzipWhenAccepted(r);
+    }
+
+    /**
+     * @return the snapshot for the current pool data version, only the first request after a change builds it
+     */
+    private JsonSnapshot getSnapshot(AtomicReference<JsonSnapshot> snapshotReference, Supplier<JsonStream.Producer> builder) throws IOException {
+        long version = pool.getDataVersion();
+        JsonSnapshot snapshot = snapshotReference.get();
+        if (snapshot == null || snapshot.getVersion() != version) {
+            synchronized (snapshotReference) {
+                snapshot = snapshotReference.get();
+                if (snapshot == null || snapshot.getVersion() != version) {
+                    snapshot = JsonSnapshot.of(version, new JsonStream(builder.get()).readAll());
+                    snapshotReference.set(snapshot);
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    private static boolean acceptsGzip(IHTTPSession session) {
+        String acceptEncoding = session.getHeaders().get("accept-encoding");
+        return acceptEncoding != null && acceptEncoding.contains("gzip");
+    }
+
+    private Response snapshotResponse(IHTTPSession session, JsonSnapshot snapshot) {
+        Response response;
+        if (snapshot.getEtag().equals(session.getHeaders().get("if-none-match"))) {
+            response = NanoHTTPD.newFixedLengthResponse(Response.Status.NOT_MODIFIED, "application/json", "");
+        } else {
+            if (acceptsGzip(session)) {
+                response = NanoHTTPD.newFixedLengthResponse(Response.Status.OK, "application/json",
+                        new ByteArrayInputStream(snapshot.getGzipBody()), snapshot.getGzipBody().length);
+                response.addHeader("Content-Encoding", "gzip");
+            } else {
+                response = NanoHTTPD.newFixedLengthResponse(Response.Status.OK, "application/json",
+                        new ByteArrayInputStream(snapshot.getBody()), snapshot.getBody().length);
+            }
+        }
+        response.addHeader("ETag", snapshot.getEtag());
+        response.addHeader("Vary", "Accept-Encoding");
+        return response;
+    }
+
+    private JsonStream.Producer buildMinersJson() {
+        AtomicReference<Double> poolCapacity = new AtomicReference<>(0d);
+        Iterator<Miner> miners = storageService.getMinersFiltered()
+                .stream()
+                .sorted(Comparator.comparing(Miner::getSharedCapacity).reversed())
+                .iterator();
+        return JsonStream.objectWithArray("miners", miners, (writer, miner) -> {
+            poolCapacity.updateAndGet(v -> v + miner.getTotalCapacity());
+            writeMiner(writer, miner, false);
+        }, writer -> {
+            writer.name("explorer").value(propertyService.getString(Props.siteExplorerURL) + propertyService.getString(Props.siteExplorerAccount));
+            writer.name("poolCapacity").value(poolCapacity.get());
+        });
+    }
+
+    private JsonStream.Producer buildTopMinersJson() {
+        AtomicReference<Double> othersShare = new AtomicReference<>(1d);
+        Iterator<Miner> topMiners = storageService.getMinersFiltered().stream()
+                .sorted((m1, m2) -> Double.compare(m2.getShare(), m1.getShare())) // Reverse order - highest to lowest
+                .limit(10)
+                .iterator();
+        return JsonStream.objectWithArray("topMiners", topMiners, (writer, miner) -> {
+            writeMiner(writer, miner, false);
+            othersShare.updateAndGet(share -> share - miner.getShare());
+        }, writer -> {
+            writer.name("explorer").value(propertyService.getString(Props.siteExplorerURL) + propertyService.getString(Props.siteExplorerAccount));
+            writer.name("othersShare").value(othersShare.get());
+        });
+    }
+
+    private JsonStream.Producer buildWonBlocksJson() {
+        // Possible pending blocks first, then the processed ones
+        List<JsonStream.Fields> wonBlocks = new ArrayList<>();
+        ArrayList<Block> recentlyForged = pool.getRecentlyForged();
+        if(recentlyForged != null) {
+            for(Block b : recentlyForged) {
+                wonBlocks.add(writer -> {
+                    writer.beginObject();
+                    writer.name("height").value(b.getHeight());
+                    writer.name("id").value(b.getId().getID());
+                    writer.name("generator").value(b.getGenerator().getID());
+                    writer.name("generatorRS").value(b.getGenerator().getFullAddress());
+                    String name = getMinerName(storageService.getMiner(b.getGenerator()));
+                    if (name != null) {
+                        writer.name("name").value(name);
+                    }
+                    writer.name("reward").value("Processing...");
+                    writer.name("poolShare").value("Processing...");
+                    writer.endObject();
+                });
+            }
+        }
+        for (WonBlock wonBlock : storageService.getWonBlocks(100)) {
+            wonBlocks.add(writer -> {
+                writer.beginObject();
+                writer.name("height").value(wonBlock.getBlockHeight());
+                writer.name("id").value(wonBlock.getBlockId().getID());
+                writer.name("generator").value(wonBlock.getGeneratorId().getID());
+                writer.name("generatorRS").value(wonBlock.getGeneratorId().getFullAddress());
+                String name = getMinerName(storageService.getMiner(wonBlock.getGeneratorId()));
+                if (name != null) {
+                    writer.name("name").value(name);
+                }
+                writer.name("reward").value(wonBlock.getFullReward().toFormattedString());
+                writer.name("poolShare").value(wonBlock.getPoolShare().toFormattedString());
+                writer.endObject();
+            });
+        }
+        return JsonStream.objectWithArray("wonBlocks", wonBlocks.iterator(), (writer, wonBlock) -> wonBlock.write(writer),
+                writer -> writer.name("explorer").value(propertyService.getString(Props.siteExplorerURL) + propertyService.getString(Props.siteExplorerAccount)));
+    }
+
+    private Response jsonResponse(String json) {
+        return NanoHTTPD.newFixedLengthResponse(Response.Status.OK, "application/json", json);
+    }
+
+    private Response jsonResponse(JsonStream.Producer producer) {
+        return NanoHTTPD.newChunkedResponse(Response.Status.OK, "application/json", new JsonStream(producer));
+    }
+
+    private Response handleBurstApiCall(IHTTPSession session, Map<String, String> params) {
         if (session.getMethod().equals(Method.POST) && Objects.equals(params.get("requestType"), "submitNonce")) {
             BigInteger nonce = null;
             try {
@@ -195,48 +347,65 @@ public class Server extends NanoHTTPD {
                     throw new SubmissionException("Nonce not set or invalid");
                 }
 
+                // Miners that send the height they mined for can be rejected before verifying stale nonces
+                long blockHeight = -1;
+                try {
+                    if (params.containsKey("blockheight")) {
+                        blockHeight = Long.parseLong(params.get("blockheight"));
+                    }
+                } catch (NumberFormatException ignored) {}
+
                 String userAgent = session.getHeaders().get("user-agent");
                 if (userAgent == null) userAgent = "";
-                return gson.toJson(new NonceSubmissionResponse("success", pool.checkNewSubmission(submission, userAgent)));
+                return jsonResponse(gson.toJson(new NonceSubmissionResponse("success", pool.checkNewSubmission(submission, userAgent, blockHeight))));
+            } catch (PoolOverloadedException e) {
+                Response response = jsonResponse(gson.toJson(new NonceSubmissionResponse(e.getMessage(), null)));
+                response.addHeader("Retry-After", "1");
+                return response;
             } catch (SubmissionException e) {
-                return gson.toJson(new NonceSubmissionResponse(e.getMessage(), null));
+                return jsonResponse(gson.toJson(new NonceSubmissionResponse(e.getMessage(), null)));
             }
         } else if (Objects.equals(params.get("requestType"), "getMiningInfo")) {
-            MiningInfo miningInfo = pool.getMiningInfo();
-            if (miningInfo == null) return gson.toJson(JsonNull.INSTANCE);
-            JsonObject miningInfoObj = new JsonObject();
-            miningInfoObj.addProperty("height", Long.toUnsignedString(miningInfo.getHeight()));
-            miningInfoObj.addProperty("generationSignature", burstCrypto.toHexString(miningInfo.getGenerationSignature()));
-            miningInfoObj.addProperty("baseTarget", Long.toUnsignedString(miningInfo.getBaseTarget()));
-            miningInfoObj.addProperty("averageCommitmentNQT", Long.toUnsignedString(miningInfo.getAverageCommitmentNQT()));
-
-            return miningInfoObj.toString();
-            // return gson.toJson(new MiningInfoResponse(burstCrypto.toHexString(miningInfo.getGenerationSignature()), miningInfo.getBaseTarget(), miningInfo.getHeight(), miningInfo.getAverageCommitmentNQT()));
+            // Serialized once per round. Miners sending the height they have can wait here for the next round instead of polling
+            long knownHeight = -1;
+            long timeout = 0;
+            try {
+                if (params.containsKey("height")) {
+                    knownHeight = Long.parseLong(params.get("height"));
+                    timeout = Math.min(Long.parseLong(params.getOrDefault("timeout", "0")), propertyService.getInt(Props.longPollTimeout));
+                }
+            } catch (NumberFormatException ignored) {}
+            // Answered right away when too many miners are already waiting
+            boolean longPoll = timeout > 0 && longPolls != null;
+            if (longPoll && !longPolls.tryAcquire()) {
+                longPoll = false;
+                timeout = 0;
+            }
+            byte[] miningInfo;
+            try {
+                miningInfo = pool.getMiningInfoResponse(knownHeight, timeout);
+            } finally {
+                if (longPoll) {
+                    longPolls.release();
+                }
+            }
+            return NanoHTTPD.newFixedLengthResponse(Response.Status.OK, "application/json", new ByteArrayInputStream(miningInfo), miningInfo.length);
         } else {
-            return "404 not found";
+            return jsonResponse("404 not found");
         }
     }
 
-    private String handleApiCall(IHTTPSession session, Map<String, String> params) {
+    private Response handleApiCall(IHTTPSession session, Map<String, String> params) throws IOException {
 
         if (session.getUri().startsWith("/api/getMiners")) {
-            JsonArray minersJson = new JsonArray();
-            AtomicReference<Double> poolCapacity = new AtomicReference<>(0d);
-            storageService.getMinersFiltered()
-            .stream()
-            .sorted(Comparator.comparing(Miner::getSharedCapacity).reversed())
-            .forEach(miner -> {
-                poolCapacity.updateAndGet(v -> v + miner.getTotalCapacity());
-                minersJson.add(minerToJson(miner, false));
-            });
-            JsonObject jsonObject = new JsonObject();
-            jsonObject.add("miners", minersJson);
-            jsonObject.addProperty("explorer", propertyService.getString(Props.siteExplorerURL) + propertyService.getString(Props.siteExplorerAccount));
-            jsonObject.addProperty("poolCapacity", poolCapacity.get());
-            return jsonObject.toString();
+            return snapshotResponse(session, getSnapshot(minersSnapshot, this::buildMinersJson));
         } else if (session.getUri().startsWith("/api/getMiner/")) {
             SignumAddress minerAddress = SignumAddress.fromEither(session.getUri().substring(14));
-            return minerToJson(storageService.getMiner(minerAddress), true).toString();
+            Miner miner = storageService.getMiner(minerAddress);
+            return jsonResponse(writer -> {
+                writeMiner(writer, miner, true);
+                return false;
+            });
         } else if (session.getUri().startsWith("/api/getConfig")) {
             JsonObject response = new JsonObject();
             response.addProperty("version", Constants.VERSION);
@@ -266,71 +435,29 @@ public class Server extends NanoHTTPD {
             response.addProperty("discordLink", propertyService.getString(Props.siteDiscordLink));
             response.addProperty("faucet", propertyService.getString(Props.siteFaucetURL));
 
-            return response.toString();
+            return jsonResponse(response.toString());
         } else if (session.getUri().startsWith("/api/getCurrentRound")) {
-            return pool.getCurrentRoundInfo(gson).toString();
+            return jsonResponse(pool.getCurrentRoundInfo(gson).toString());
         } else if (session.getUri().startsWith("/api/getTop10Miners")) {
-            AtomicReference<Double> othersShare = new AtomicReference<>(1d);
-            JsonArray topMiners = new JsonArray();
-            storageService.getMinersFiltered().stream()
-            .sorted((m1, m2) -> Double.compare(m2.getShare(), m1.getShare())) // Reverse order - highest to lowest
-            .limit(10)
-            .forEach(miner -> {
-                topMiners.add(minerToJson(miner, false));
-                othersShare.updateAndGet(share -> share - miner.getShare());
-            });
-            JsonObject response = new JsonObject();
-            response.add("topMiners", topMiners);
-            response.addProperty("explorer", propertyService.getString(Props.siteExplorerURL) + propertyService.getString(Props.siteExplorerAccount));
-            response.addProperty("othersShare", othersShare.get());
-            return response.toString();
+            return snapshotResponse(session, getSnapshot(topMinersSnapshot, this::buildTopMinersJson));
         } else if (session.getUri().startsWith("/api/getWonBlocks")) {
-            JsonArray wonBlocks = new JsonArray();
-            
-            // Get possible pending blocks
-            ArrayList<Block> recentlyForged = pool.getRecentlyForged();
-            if(recentlyForged != null) {
-                for(Block b : recentlyForged) {
-                    JsonObject wonBlockJson = new JsonObject();
-                    wonBlockJson.addProperty("height", b.getHeight());
-                    wonBlockJson.addProperty("id", b.getId().getID());
-                    wonBlockJson.addProperty("generator", b.getGenerator().getID());
-                    wonBlockJson.addProperty("generatorRS", b.getGenerator().getFullAddress());
-                    Miner miner = storageService.getMiner(b.getGenerator());
-                    String name = getMinerName(miner);
-                    if (name != null) {
-                        wonBlockJson.addProperty("name", name);
-                    }
-                    wonBlockJson.addProperty("reward", "Processing...");
-                    wonBlockJson.addProperty("poolShare", "Processing...");
-                    wonBlocks.add(wonBlockJson);
-                }
+            return jsonResponse(buildWonBlocksJson());
+        } else if (session.getUri().startsWith("/api/events")) {
+            // Holds a server thread for as long as the client stays connected
+            if (eventStreams != null && !eventStreams.tryAcquire()) {
+                Response response = NanoHTTPD.newFixedLengthResponse(Response.Status.SERVICE_UNAVAILABLE, "text/plain", "Too many event streams");
+                response.addHeader("Retry-After", "60");
+                return response;
             }
-            
-            storageService.getWonBlocks(100)
-            .forEach(wonBlock -> {
-
-                JsonObject wonBlockJson = new JsonObject();
-                wonBlockJson.addProperty("height", wonBlock.getBlockHeight());
-                wonBlockJson.addProperty("id", wonBlock.getBlockId().getID());
-                wonBlockJson.addProperty("generator", wonBlock.getGeneratorId().getID());
-                wonBlockJson.addProperty("generatorRS", wonBlock.getGeneratorId().getFullAddress());
-                Miner miner = storageService.getMiner(wonBlock.getGeneratorId());
-                String name = getMinerName(miner);
-                if (name != null) {
-                    wonBlockJson.addProperty("name", name);
+            Response response = NanoHTTPD.newChunkedResponse(Response.Status.OK, EVENT_STREAM, pool.getEvents().subscribe(() -> {
+                if (eventStreams != null) {
+                    eventStreams.release();
                 }
-                wonBlockJson.addProperty("reward", wonBlock.getFullReward().toFormattedString());
-                wonBlockJson.addProperty("poolShare", wonBlock.getPoolShare().toFormattedString());
-                wonBlocks.add(wonBlockJson);
-            });
-            JsonObject response = new JsonObject();
-            response.add("wonBlocks", wonBlocks);
-            response.addProperty("explorer", propertyService.getString(Props.siteExplorerURL) + propertyService.getString(Props.siteExplorerAccount));
-
-            return response.toString();
+            }));
+            response.addHeader("Cache-Control", "no-cache");
+            return response;
         } else {
-            return "null";
+            return jsonResponse("null");
         }
     }
 
@@ -359,97 +486,19 @@ public class Server extends NanoHTTPD {
             return NanoHTTPD.newFixedLengthResponse(Response.Status.FORBIDDEN, "text/html", "<h1>Access Forbidden</h1>");
         }
 
-        Response httpResponse = null;
-        if (fileCache != null && fileCache.containsKey(uri)) {
-            httpResponse = NanoHTTPD.newFixedLengthResponse(Response.Status.OK, URLConnection.guessContentTypeFromName(uri), fileCache.get(uri));
-        }
-
-        if(httpResponse == null) {
-            InputStream inputStream = null;
-            if (uri.contains("favicon.ico")) {
-                inputStream = new FileInputStream(propertyService.getString(Props.siteIconIco));
-            } else if (uri.equals("/img/poolIcon.png")) {
-                inputStream = new FileInputStream(propertyService.getString(Props.siteIconPng));
-            } else {
-                File file = new File(htmlRoot, uri);
-                if(isPath || !file.isFile() || !file.exists() || !file.canRead()) {
-                    file = new File(htmlRoot, "index.html");
-                    mimeType = MIME_HTML;
-                }
-                inputStream = new FileInputStream(file);
-            }
-
-            if (uri.contains(".png") || uri.contains(".ico")) {
-                httpResponse = NanoHTTPD.newChunkedResponse(Response.Status.OK, mimeType, inputStream);
-            }
-
-            if(httpResponse == null) {
-                int bufferSize = 1024*1024;
-                char[] buffer = new char[bufferSize];
-                StringBuilder out = new StringBuilder();
-                Reader in = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
-                for (int numRead; (numRead = in.read(buffer, 0, buffer.length)) > 0; ) {
-                    out.append(buffer, 0, numRead);
-                }
-                in.close();
-                String response = out.toString();
-
-                String extraMenuItems = propertyService.getString(Props.siteExtraMenuItems).replaceAll("\"","\\\\\"");
-
-                if (mimeType!=null && mimeType.equals(MIME_HTML)) {
-                    response = response
-                            // Replace the TAGS
-                            .replace("{TITLE}", propertyService.getString(Props.siteTitle))
-                            .replace("{HOMEFIRSTLINETITLE}", propertyService.getString(Props.siteHomeFirstLine))
-                            .replace("{HOMESECONDLINETITLE}", propertyService.getString(Props.siteHomeSecondLine))
-                            .replace("{PRICEENDPOINT}", propertyService.getString(Props.sitePrice))
-                            .replace("{PUBLICNODE}", propertyService.getString(Props.siteNodeAddress))
-                            .replace("{DISCORD}", propertyService.getString(Props.siteDiscordLink))
-                            .replace("{INFO}", propertyService.getString(Props.siteInfo))
-                            .replace("{PAGEURL}", propertyService.getString(Props.miningURL))
-                            .replace("{POOL_ACCOUNT}", burstCrypto.getAddressFromPassphrase(propertyService.getString(Props.passphrase)).getFullAddress())
-                            .replace("{MININGADDRESS}", propertyService.getString(Props.miningURL))
-                            .replace("{MININGGUIDE}", propertyService.getString(Props.miningGuide))
-                            .replace("{LAG}", Integer.toString(propertyService.getInt(Props.processLag)))
-                            .replace("{MIN_PAYOUT}", SignumValue.fromSigna(propertyService.getFloat(Props.minimumMinimumPayout)).toUnformattedString())
-                            .replace("{FAUCET}", propertyService.getString(Props.siteFaucetURL))
-                            .replace("{EXPLORER}", propertyService.getString(Props.siteExplorerURL))
-
-                            .replace("\"*{PRIMARYCOLOR}*\"", propertyService.getString(Props.sitePrimaryColor))
-                            .replace("\"*{PRIMARYLIGHTCOLOR}*\"", propertyService.getString(Props.sitePrimaryLightColor))
-                            .replace("\"*{PRIMARYDARKCOLOR}*\"", propertyService.getString(Props.sitePrimaryDarkColor))
-                            .replace("\"*{SECONDARYCOLOR}*\"", propertyService.getString(Props.siteSecondaryColor))
-                            .replace("\"*{SECONDARYLIGHTCOLOR}*\"", propertyService.getString(Props.siteSecondaryLightColor))
-                            .replace("\"*{SECONDARYDARKCOLOR}*\"", propertyService.getString(Props.siteSecondaryDarkColor))
-                            .replace("\"*{GRAPHCOLOR}*\"", propertyService.getString(Props.siteGraphColor))
-                            .replace("{PRIMARYCOLOR}", propertyService.getString(Props.sitePrimaryColor))
-                            .replace("{PRIMARYLIGHTCOLOR}", propertyService.getString(Props.sitePrimaryLightColor))
-                            .replace("{PRIMARYDARKCOLOR}", propertyService.getString(Props.sitePrimaryDarkColor))
-                            .replace("{SECONDARYCOLOR}", propertyService.getString(Props.siteSecondaryColor))
-                            .replace("{SECONDARYLIGHTCOLOR}", propertyService.getString(Props.siteSecondaryLightColor))
-                            .replace("{SECONDARYDARKCOLOR}", propertyService.getString(Props.siteSecondaryDarkColor))
-                            .replace("{GRAPHCOLOR}", propertyService.getString(Props.siteGraphColor))
-
-                            .replace("{EXTRAPOOLURL}", extraMenuItems)
-                            .replace("{DEFAULTLANG}", propertyService.getString(Props.siteDefaultLanguage))
-
-                            .replace("{SEODESCRIPTION}", propertyService.getString(Props.siteSeoDescription))
-                            .replace("{SEOIMGURL}", propertyService.getString(Props.siteSeoImageUrl))
-
-                            .replace("{SHOWTRADINGLINK}", propertyService.getString(Props.siteShowTradingLink))
-                            .replace("{MINITRADINGLINK}", propertyService.getString(Props.siteMiniTradingLink))
-                            .replace("{LARGETRADINGLINK}", propertyService.getString(Props.siteLargeTradingLink))
-
-                            .replace("{GOOGLETRACKINGID}", propertyService.getString(Props.siteGoogleTracking))
-
-                            ;
-                }
-                if(fileCache != null) {
-                    fileCache.put(uri, response);
-                }
-                httpResponse = NanoHTTPD.newFixedLengthResponse(Response.Status.OK, mimeType, response);
+        StaticAssets.Asset asset = staticAssets.get(uri, mimeType, isPath);
+        Response httpResponse;
+        if (asset.getEtag().equals(session.getHeaders().get("if-none-match"))) {
+            httpResponse = NanoHTTPD.newFixedLengthResponse(Response.Status.NOT_MODIFIED, asset.getMimeType(), "");
+        } else {
+            boolean gzip = asset.hasGzip() && acceptsGzip(session);
+            httpResponse = NanoHTTPD.newFixedLengthResponse(Response.Status.OK, asset.getMimeType(), asset.open(gzip), asset.getLength(gzip));
+            if (gzip) {
+                httpResponse.addHeader("Content-Encoding", "gzip");
             }
         }
+        httpResponse.addHeader("ETag", asset.getEtag());
+        httpResponse.addHeader("Vary", "Accept-Encoding");
         if(uri.contains("static") || uri.contains("assets")) {
             // static content is cached for 1 year
             httpResponse.addHeader("Cache-Control", "max-age=31536000");
@@ -468,64 +517,63 @@ public class Server extends NanoHTTPD {
         return null;
     }
 
-    private JsonElement minerToJson(Miner miner, boolean returnDeadlines) {
-        if (miner == null) return JsonNull.INSTANCE;
-
-        JsonObject minerJson = new JsonObject();
-        minerJson.addProperty("address", miner.getAddress().getID());
-        minerJson.addProperty("addressRS", miner.getAddress().getFullAddress());
-        minerJson.addProperty("pendingBalance", miner.getPending().toFormattedString());
-        minerJson.addProperty("totalCapacity", miner.getTotalCapacity());
-        minerJson.addProperty("totalEffectiveCapacity", miner.getTotalEffectiveCapacity());
-        minerJson.addProperty("commitment", miner.getCommittedBalance().divide(Math.max(1.0, miner.getTotalEffectiveCapacity())).toFormattedString());
-        minerJson.addProperty("committedBalance", miner.getCommittedBalance().toFormattedString());
-        minerJson.addProperty("boost", miner.getBoost());
-        minerJson.addProperty("boostPool", miner.getBoostPool());
-        minerJson.addProperty("sharedCapacity", miner.getSharedCapacity());
-        minerJson.addProperty("sharePercent", miner.getSharePercent());
-        minerJson.addProperty("donationPercent", miner.getDonationPercent());
-        minerJson.addProperty("nConf", miner.getNConf());
-        minerJson.addProperty("share", miner.getShare());
-        minerJson.addProperty("minimumPayout", miner.getMinimumPayout().toFormattedString());
+    private void writeMiner(JsonWriter writer, Miner miner, boolean returnDeadlines) throws IOException {
+        if (miner == null) {
+            writer.nullValue();
+            return;
+        }
+
+        List<Deadline> deadlines = returnDeadlines ? miner.getDeadlines() : null;
+        writer.beginObject();
+        writer.name("address").value(miner.getAddress().getID());
+        writer.name("addressRS").value(miner.getAddress().getFullAddress());
+        writer.name("pendingBalance").value(miner.getPending().toFormattedString());
+        writer.name("totalCapacity").value(miner.getTotalCapacity());
+        writer.name("totalEffectiveCapacity").value(miner.getTotalEffectiveCapacity());
+        writer.name("commitment").value(miner.getCommittedBalance().divide(Math.max(1.0, miner.getTotalEffectiveCapacity())).toFormattedString());
+        writer.name("committedBalance").value(miner.getCommittedBalance().toFormattedString());
+        // With the deadlines, boost and boostPool hold the values of each deadline instead
+        if (deadlines != null) {
+            writeDeadlineValues(writer.name("boost"), deadlines, Deadline::getBoost);
+            writeDeadlineValues(writer.name("boostPool"), deadlines, Deadline::getBoostPool);
+        } else {
+            writer.name("boost").value(miner.getBoost());
+            writer.name("boostPool").value(miner.getBoostPool());
+        }
+        writer.name("sharedCapacity").value(miner.getSharedCapacity());
+        writer.name("sharePercent").value(miner.getSharePercent());
+        writer.name("donationPercent").value(miner.getDonationPercent());
+        writer.name("nConf").value(miner.getNConf());
+        writer.name("share").value(miner.getShare());
+        writer.name("minimumPayout").value(miner.getMinimumPayout().toFormattedString());
         Deadline bestDeadline = miner.getBestDeadline(getCurrentHeight());
         if (bestDeadline != null) {
-            BigInteger deadline = bestDeadline.getDeadline();
-            deadline = BigInteger.valueOf((long)(Math.log(deadline.doubleValue()/bestDeadline.getBoost()) * Pool.LN_FACTOR));
+            long deadline = (long)(Math.log(bestDeadline.getDeadline()/bestDeadline.getBoost()) * Pool.LN_FACTOR);
 
-            minerJson.addProperty("currentRoundBestDeadline", deadline.toString());
+            writer.name("currentRoundBestDeadline").value(Long.toString(deadline));
         }
         String name = getMinerName(miner);
         if (name != null) {
-            minerJson.addProperty("name", name);
+            writer.name("name").value(name);
         }
         if (!Objects.equals(miner.getUserAgent(), "")) {
-            minerJson.addProperty("userAgent", miner.getUserAgent());
+            writer.name("userAgent").value(miner.getUserAgent());
         }
 
-        if(returnDeadlines) {
-            List<Deadline> deadlines = miner.getDeadlines();
-            JsonArray deadlinesJson = new JsonArray();
-            JsonArray baseTargetJson = new JsonArray();
-            JsonArray heightsJson = new JsonArray();
-            JsonArray sharesJson = new JsonArray();
-            JsonArray boostJson = new JsonArray();
-            JsonArray boostPoolJson = new JsonArray();
-            for(Deadline d : deadlines) {
-                deadlinesJson.add(d.getDeadline().longValue());
-                baseTargetJson.add(d.getBaseTarget().longValue());
-                heightsJson.add(d.getHeight());
-                sharesJson.add(d.getSharePercent());
-                boostJson.add(d.getBoost());
-                boostPoolJson.add(d.getBoostPool());
-            }
-            minerJson.add("deadlines", deadlinesJson);
-            minerJson.add("heights", heightsJson);
-            minerJson.add("shares", sharesJson);
-            minerJson.add("boost", boostJson);
-            minerJson.add("boostPool", boostPoolJson);
+        if(deadlines != null) {
+            writeDeadlineValues(writer.name("deadlines"), deadlines, Deadline::getDeadline);
+            writeDeadlineValues(writer.name("heights"), deadlines, Deadline::getHeight);
+            writeDeadlineValues(writer.name("shares"), deadlines, Deadline::getSharePercent);
         }
+        writer.endObject();
+    }
 
-        return minerJson;
+    private static void writeDeadlineValues(JsonWriter writer, List<Deadline> deadlines, Function<Deadline, Number> value) throws IOException {
+        writer.beginArray();
+        for (Deadline deadline : deadlines) {
+            writer.value(value.apply(deadline));
+        }
+        writer.endArray();
     }
 
     private static Map<String, String> queryToMap(String query) {
@@ -0,0 +1,217 @@
+package burst.pool.pool;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import signumj.crypto.SignumCrypto;
+import signumj.entity.SignumValue;
+import burst.pool.storage.config.PropertyService;
+import burst.pool.storage.config.Props;
+import fi.iki.elonen.NanoHTTPD;
+
+/**
+ * Files of the pool site. Each file is read (and HTML rendered) once, then kept in memory with a
+ * precompressed gzip variant and an ETag. Files are read again when they change on disk, rendered
+ * HTML also when the properties are reloaded.
+ */
+public class StaticAssets {
+    private static final Set<String> compressibleMimeTypes = new HashSet<>(Arrays.asList(
+            NanoHTTPD.MIME_HTML, "text/css", "image/svg+xml", "text/javascript", "application/json", "text/plain"));
+    private static final Set<String> quotedTemplateNames = new HashSet<>(Arrays.asList(
+            "PRIMARYCOLOR", "PRIMARYLIGHTCOLOR", "PRIMARYDARKCOLOR", "SECONDARYCOLOR", "SECONDARYLIGHTCOLOR", "SECONDARYDARKCOLOR", "GRAPHCOLOR"));
+    private static final Set<String> templateNames = new HashSet<>(Arrays.asList(
+            "TITLE", "HOMEFIRSTLINETITLE", "HOMESECONDLINETITLE", "PRICEENDPOINT", "PUBLICNODE", "DISCORD", "INFO", "PAGEURL",
+            "POOL_ACCOUNT", "MININGADDRESS", "MININGGUIDE", "LAG", "MIN_PAYOUT", "FAUCET", "EXPLORER",
+            "PRIMARYCOLOR", "PRIMARYLIGHTCOLOR", "PRIMARYDARKCOLOR", "SECONDARYCOLOR", "SECONDARYLIGHTCOLOR", "SECONDARYDARKCOLOR", "GRAPHCOLOR",
+            "EXTRAPOOLURL", "DEFAULTLANG", "SEODESCRIPTION", "SEOIMGURL", "SHOWTRADINGLINK", "MINITRADINGLINK", "LARGETRADINGLINK",
+            "GOOGLETRACKINGID"));
+
+    private final PropertyService propertyService;
+    private final SignumCrypto burstCrypto = SignumCrypto.getInstance();
+    private final File htmlRoot;
+    private final boolean cacheEnabled;
+    private final Map<String, Asset> assets = new ConcurrentHashMap<>();
+    private final Map<String, Template> templates = new ConcurrentHashMap<>();
+    private volatile TemplateValues templateValues;
+
+    public StaticAssets(PropertyService propertyService, File htmlRoot) {
+        this.propertyService = propertyService;
+        this.htmlRoot = htmlRoot;
+        this.cacheEnabled = !propertyService.getBoolean(Props.siteDisableCache);
+    }
+
+    /**
+     * @param isPath true if the uri is a site path, not a file, which is answered with index.html
+     */
+    public Asset get(String uri, String mimeType, boolean isPath) throws IOException {
+        File file;
+        if (uri.contains("favicon.ico")) {
+            file = new File(propertyService.getString(Props.siteIconIco));
+        } else if (uri.equals("/img/poolIcon.png")) {
+            file = new File(propertyService.getString(Props.siteIconPng));
+        } else {
+            file = new File(htmlRoot, uri);
+            if(isPath || !file.isFile() || !file.canRead()) {
+                file = new File(htmlRoot, "index.html");
+                mimeType = NanoHTTPD.MIME_HTML;
+            }
+        }
+
+        long configVersion = propertyService.getVersion();
+        // Taken before reading, so a change while reading is picked up by the next request
+        long lastModified = file.lastModified();
+        if (!cacheEnabled) {
+            return load(file, mimeType, configVersion, lastModified);
+        }
+        // Keyed by file, so all site paths share the rendered index.html
+        String key = file.getPath();
+        Asset asset = assets.get(key);
+        if (asset != null && asset.lastModified != lastModified) {
+            templates.remove(key);
+            asset = null;
+        }
+        if (asset == null || (asset.template && asset.configVersion != configVersion)) {
+            asset = load(file, mimeType, configVersion, lastModified);
+            assets.put(key, asset);
+        }
+        return asset;
+    }
+
+    private Asset load(File file, String mimeType, long configVersion, long lastModified) throws IOException {
+        boolean template = NanoHTTPD.MIME_HTML.equals(mimeType);
+        byte[] body;
+        if (template) {
+            // Compiled once per file, only rendered again when the properties change
+            Template compiled = cacheEnabled ? templates.get(file.getPath()) : null;
+            if (compiled == null) {
+                compiled = Template.compile(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8), templateNames, quotedTemplateNames);
+                if (cacheEnabled) {
+                    templates.put(file.getPath(), compiled);
+                }
+            }
+            body = compiled.render(getTemplateValues(configVersion));
+        } else {
+            body = Files.readAllBytes(file.toPath());
+        }
+        byte[] gzipBody = compressibleMimeTypes.contains(mimeType) ? JsonSnapshot.gzip(body) : null;
+        return new Asset(mimeType, body, gzipBody, JsonSnapshot.etag(body), configVersion, lastModified, template);
+    }
+
+    /**
+     * @return the encoded template values for the current properties, resolved again only after a reload
+     */
+    private Map<String, byte[]> getTemplateValues(long configVersion) {
+        TemplateValues values = templateValues;
+        if (values == null || values.configVersion != configVersion) {
+            values = new TemplateValues(configVersion, resolveTemplateValues());
+            templateValues = values;
+        }
+        return values.values;
+    }
+
+    private Map<String, byte[]> resolveTemplateValues() {
+        Map<String, String> values = new HashMap<>();
+        values.put("TITLE", propertyService.getString(Props.siteTitle));
+        values.put("HOMEFIRSTLINETITLE", propertyService.getString(Props.siteHomeFirstLine));
+        values.put("HOMESECONDLINETITLE", propertyService.getString(Props.siteHomeSecondLine));
+        values.put("PRICEENDPOINT", propertyService.getString(Props.sitePrice));
+        values.put("PUBLICNODE", propertyService.getString(Props.siteNodeAddress));
+        values.put("DISCORD", propertyService.getString(Props.siteDiscordLink));
+        values.put("INFO", propertyService.getString(Props.siteInfo));
+        values.put("PAGEURL", propertyService.getString(Props.miningURL));
+        values.put("POOL_ACCOUNT", burstCrypto.getAddressFromPassphrase(propertyService.getString(Props.passphrase)).getFullAddress());
+        values.put("MININGADDRESS", propertyService.getString(Props.miningURL));
+        values.put("MININGGUIDE", propertyService.getString(Props.miningGuide));
+        values.put("LAG", Integer.toString(propertyService.getInt(Props.processLag)));
+        values.put("MIN_PAYOUT", SignumValue.fromSigna(propertyService.getFloat(Props.minimumMinimumPayout)).toUnformattedString());
+        values.put("FAUCET", propertyService.getString(Props.siteFaucetURL));
+        values.put("EXPLORER", propertyService.getString(Props.siteExplorerURL));
+
+        values.put("PRIMARYCOLOR", propertyService.getString(Props.sitePrimaryColor));
+        values.put("PRIMARYLIGHTCOLOR", propertyService.getString(Props.sitePrimaryLightColor));
+        values.put("PRIMARYDARKCOLOR", propertyService.getString(Props.sitePrimaryDarkColor));
+        values.put("SECONDARYCOLOR", propertyService.getString(Props.siteSecondaryColor));
+        values.put("SECONDARYLIGHTCOLOR", propertyService.getString(Props.siteSecondaryLightColor));
+        values.put("SECONDARYDARKCOLOR", propertyService.getString(Props.siteSecondaryDarkColor));
+        values.put("GRAPHCOLOR", propertyService.getString(Props.siteGraphColor));
+
+        values.put("EXTRAPOOLURL", propertyService.getString(Props.siteExtraMenuItems).replaceAll("\"","\\\\\""));
+        values.put("DEFAULTLANG", propertyService.getString(Props.siteDefaultLanguage));
+
+        values.put("SEODESCRIPTION", propertyService.getString(Props.siteSeoDescription));
+        values.put("SEOIMGURL", propertyService.getString(Props.siteSeoImageUrl));
+
+        values.put("SHOWTRADINGLINK", propertyService.getString(Props.siteShowTradingLink));
+        values.put("MINITRADINGLINK", propertyService.getString(Props.siteMiniTradingLink));
+        values.put("LARGETRADINGLINK", propertyService.getString(Props.siteLargeTradingLink));
+
+        values.put("GOOGLETRACKINGID", propertyService.getString(Props.siteGoogleTracking));
+
+        Map<String, byte[]> encoded = new HashMap<>();
+        values.forEach((name, value) -> encoded.put(name, (value == null ? "" : value).getBytes(StandardCharsets.UTF_8)));
+        return encoded;
+    }
+
+    private static final class TemplateValues {
+        private final long configVersion;
+        private final Map<String, byte[]> values;
+
+        private TemplateValues(long configVersion, Map<String, byte[]> values) {
+            this.configVersion = configVersion;
+            this.values = values;
+        }
+    }
+
+    public static class Asset {
+        private final String mimeType;
+        private final byte[] body;
+        private final byte[] gzipBody;
+        private final String etag;
+        private final long configVersion;
+        private final long lastModified;
+        private final boolean template;
+
+        private Asset(String mimeType, byte[] body, byte[] gzipBody, String etag, long configVersion, long lastModified, boolean template) {
+            this.mimeType = mimeType;
+            this.body = body;
+            this.gzipBody = gzipBody;
+            this.etag = etag;
+            this.configVersion = configVersion;
+            this.lastModified = lastModified;
+            this.template = template;
+        }
+
+        public String getMimeType() {
+            return mimeType;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public boolean hasGzip() {
+            return gzipBody != null;
+        }
+
+        public long getLength(boolean gzip) {
+            return gzip ? gzipBody.length : body.length;
+        }
+
+        /**
+         * @return a new stream over the body, reading straight from the shared array
+         */
+        public InputStream open(boolean gzip) {
+            return new ByteArrayInputStream(gzip ? gzipBody : body);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package burst.pool.pool;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per round pre-filter for nonce submissions, checked before the deadline is calculated.
+ *
+ * Remembers the deadline of each (account, nonce) already verified this round in a compact
+ * open addressing table, so miners repeating a submission are answered without hashing the
+ * scoop again. Also counts why submissions were rejected, logged when the round ends.
+ */
+public class SubmissionFilter {
+    public enum Rejection {
+        NO_MINING_INFO, STALE_HEIGHT, NO_REWARD_RECIPIENT, DEADLINE_TOO_HIGH, ROUND_ENDED, OVERLOADED
+    }
+
+    private static final int STRIPE_BITS = 4;
+    private static final int STRIPE_CAPACITY = 1024;
+    // Stored instead of a deadline for nonces that exceeded the maximum deadline
+    private static final long TOO_HIGH = -1;
+
+    private final Stripe[] stripes = new Stripe[1 << STRIPE_BITS];
+    private final LongAdder verified = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder[] rejections = new LongAdder[Rejection.values().length];
+
+    public SubmissionFilter() {
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+        for (int i = 0; i < rejections.length; i++) {
+            rejections[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Only chooses the stripe and slot, entries are matched on the account and nonce themselves.
+     */
+    private static long hash(long accountId, long nonce) {
+        long h = accountId * 0x9E3779B97F4A7C15L ^ nonce;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private Stripe stripeFor(long hash) {
+        return stripes[(int) (hash >>> (64 - STRIPE_BITS))];
+    }
+
+    /**
+     * @return the deadline already calculated for this nonce in this round, or null if it was not seen yet
+     * @throws SubmissionException if the nonce was seen and its deadline is too high
+     */
+    public BigInteger getKnownDeadline(long accountId, long nonce) throws SubmissionException {
+        long hash = hash(accountId, nonce);
+        Stripe stripe = stripeFor(hash);
+        long deadline;
+        synchronized (stripe) {
+            int slot = stripe.find(hash, accountId, nonce);
+            if (slot < 0) {
+                return null;
+            }
+            deadline = stripe.deadlines[slot];
+        }
+        duplicates.increment();
+        if (deadline == TOO_HIGH) {
+            reject(Rejection.DEADLINE_TOO_HIGH);
+            throw new SubmissionException("Deadline exceeds maximum allowed deadline");
+        }
+        return BigInteger.valueOf(deadline);
+    }
+
+    /**
+     * @param deadline the calculated deadline, or null if it exceeded the maximum
+     */
+    public void onVerified(long accountId, long nonce, BigInteger deadline) {
+        verified.increment();
+        long hash = hash(accountId, nonce);
+        Stripe stripe = stripeFor(hash);
+        synchronized (stripe) {
+            stripe.put(hash, accountId, nonce, deadline == null ? TOO_HIGH : deadline.longValue());
+        }
+    }
+
+    public void reject(Rejection reason) {
+        rejections[reason.ordinal()].increment();
+    }
+
+    /**
+     * @return a summary of the counters, for the log
+     */
+    public String getStats() {
+        StringBuilder stats = new StringBuilder();
+        stats.append("verified ").append(verified.sum()).append(", duplicates ").append(duplicates.sum());
+        for (Rejection reason : Rejection.values()) {
+            long count = rejections[reason.ordinal()].sum();
+            if (count > 0) {
+                stats.append(", ").append(reason.name().toLowerCase()).append(' ').append(count);
+            }
+        }
+        return stats.toString();
+    }
+
+    private static final class Stripe {
+        private final boolean[] used = new boolean[STRIPE_CAPACITY];
+        private final long[] accountIds = new long[STRIPE_CAPACITY];
+        private final long[] nonces = new long[STRIPE_CAPACITY];
+        private final long[] deadlines = new long[STRIPE_CAPACITY];
+        private int size;
+
+        private int find(long hash, long accountId, long nonce) {
+            int mask = used.length - 1;
+            for (int i = (int) hash & mask; used[i]; i = (i + 1) & mask) {
+                if (accountIds[i] == accountId && nonces[i] == nonce) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void put(long hash, long accountId, long nonce, long deadline) {
+            if (find(hash, accountId, nonce) >= 0) {
+                return;
+            }
+            if ((size + 1) * 4 > used.length * 3) {
+                // Bounded memory: forgetting the seen nonces only costs calculating them again
+                Arrays.fill(used, false);
+                size = 0;
+            }
+            int mask = used.length - 1;
+            int i = (int) hash & mask;
+            while (used[i]) {
+                i = (i + 1) & mask;
+            }
+            used[i] = true;
+            accountIds[i] = accountId;
+            nonces[i] = nonce;
+            deadlines[i] = deadline;
+            size++;
+        }
+    }
+}
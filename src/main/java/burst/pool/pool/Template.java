@@ -0,0 +1,84 @@
+package burst.pool.pool;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Site template compiled once into literal and placeholder segments, so rendering is a single
+ * pass copying bytes instead of a String.replace per placeholder over the whole document.
+ *
+ * Placeholders are written {NAME}. Quoted names also match "*{NAME}*" including the quotes,
+ * which lets values such as colors be placed in CSS or JS that must stay valid before rendering.
+ */
+public class Template {
+    private final byte[][] literals;
+    private final String[] placeholders;
+
+    private Template(byte[][] literals, String[] placeholders) {
+        this.literals = literals;
+        this.placeholders = placeholders;
+    }
+
+    /**
+     * @param names the placeholders to look for, anything else in braces is left as is
+     * @param quotedNames the placeholders that may also be written quoted
+     */
+    public static Template compile(String source, Set<String> names, Set<String> quotedNames) {
+        List<byte[]> literals = new ArrayList<>();
+        List<String> placeholders = new ArrayList<>();
+        int literalStart = 0;
+        int open = source.indexOf('{');
+        while (open >= 0) {
+            int close = source.indexOf('}', open + 1);
+            if (close < 0) {
+                break;
+            }
+            String name = source.substring(open + 1, close);
+            if (!names.contains(name)) {
+                open = source.indexOf('{', open + 1);
+                continue;
+            }
+            int start = open;
+            int end = close + 1;
+            if (quotedNames.contains(name) && source.startsWith("\"*", open - 2) && source.startsWith("*\"", end)) {
+                start -= 2;
+                end += 2;
+            }
+            literals.add(source.substring(literalStart, start).getBytes(StandardCharsets.UTF_8));
+            placeholders.add(name);
+            literalStart = end;
+            open = source.indexOf('{', end);
+        }
+        literals.add(source.substring(literalStart).getBytes(StandardCharsets.UTF_8));
+        return new Template(literals.toArray(new byte[0][]), placeholders.toArray(new String[0]));
+    }
+
+    /**
+     * @param values the UTF-8 encoded value of each placeholder
+     */
+    public byte[] render(Map<String, byte[]> values) {
+        int length = 0;
+        for (byte[] literal : literals) {
+            length += literal.length;
+        }
+        for (String placeholder : placeholders) {
+            length += values.get(placeholder).length;
+        }
+
+        byte[] rendered = new byte[length];
+        int position = 0;
+        for (int i = 0; i < placeholders.length; i++) {
+            System.arraycopy(literals[i], 0, rendered, position, literals[i].length);
+            position += literals[i].length;
+            byte[] value = values.get(placeholders[i]);
+            System.arraycopy(value, 0, rendered, position, value.length);
+            position += value.length;
+        }
+        byte[] last = literals[literals.length - 1];
+        System.arraycopy(last, 0, rendered, position, last.length);
+        return rendered;
+    }
+}
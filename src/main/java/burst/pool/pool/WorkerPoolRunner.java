@@ -0,0 +1,59 @@
+package burst.pool.pool;
+
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fi.iki.elonen.NanoHTTPD;
+
+/**
+ * Runs the NanoHTTPD connections on a fixed pool of worker threads instead of one new thread per
+ * connection. Connections beyond the pool wait in a bounded queue, and are closed if it is full.
+ */
+public class WorkerPoolRunner implements NanoHTTPD.AsyncRunner {
+    private static final Logger logger = LoggerFactory.getLogger(WorkerPoolRunner.class);
+
+    private final ThreadPoolExecutor executor;
+    private final Set<NanoHTTPD.ClientHandler> running = ConcurrentHashMap.newKeySet();
+
+    public WorkerPoolRunner(String name, int threads, int queueSize, int priority) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize), runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(priority);
+            return thread;
+        });
+    }
+
+    @Override
+    public void exec(NanoHTTPD.ClientHandler clientHandler) {
+        running.add(clientHandler);
+        try {
+            executor.execute(clientHandler);
+        } catch (RejectedExecutionException e) {
+            logger.warn("Too many connections waiting, dropping one");
+            running.remove(clientHandler);
+            clientHandler.close();
+        }
+    }
+
+    @Override
+    public void closed(NanoHTTPD.ClientHandler clientHandler) {
+        running.remove(clientHandler);
+    }
+
+    @Override
+    public void closeAll() {
+        for (NanoHTTPD.ClientHandler clientHandler : running) {
+            clientHandler.close();
+        }
+    }
+}
@@ -4,6 +4,10 @@ import signumj.entity.SignumAddress;
 
 public interface PropertyService {
     void reloadIfModified();
+    /**
+     * @return a counter increased every time the properties are reloaded
+     */
+    long getVersion();
     boolean getBoolean(Prop<Boolean> prop);
     int getInt(Prop<Integer> prop);
     long getLong(Prop<Long> prop);
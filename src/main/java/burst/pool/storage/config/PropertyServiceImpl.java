@@ -17,6 +17,7 @@ public class PropertyServiceImpl implements PropertyService {
     
     private final File file;
     private long lastModified;
+    private volatile long version;
 
     public PropertyServiceImpl(String fileName) {
         properties = new Properties();
@@ -39,11 +40,17 @@ public class PropertyServiceImpl implements PropertyService {
             logger.info("Reloading properties from {}", file.getAbsolutePath());
             lastModified = file.lastModified();
             properties.load(new FileInputStream(file));
+            version++;
         } catch (IOException e) {
             logger.error("Could not load properties from " +  file.getAbsolutePath(), e);
         }
     }
 
+    @Override
+    public long getVersion() {
+        return version;
+    }
+
     private <T> String valueOrDefault(Prop<T> prop) {
         String property = properties.getProperty(prop.getName());
         if (property == null) property = prop.getDefaultValue() == null ? null : prop.getDefaultValue().toString();
@@ -6,11 +6,21 @@ import java.util.Objects;
 
 public class Props {
     public static final Prop<Integer> serverPort = new Prop<>("serverPort", 80); // Must be > 0, < 2^16    
+    public static final Prop<Integer> serverThreads = new Prop<>("serverThreads", 0); // Must be >= 0, 0 is one thread per connection
+    public static final Prop<Integer> serverQueueSize = new Prop<>("serverQueueSize", 1024); // Must be > 0
+    public static final Prop<Integer> miningPort = new Prop<>("miningPort", 0); // Must be >= 0, < 2^16, 0 is the server port
+    public static final Prop<Integer> miningThreads = new Prop<>("miningThreads", 32); // Must be > 0
+    public static final Prop<Integer> miningQueueSize = new Prop<>("miningQueueSize", 1024); // Must be > 0
+    public static final Prop<Integer> miningReadTimeout = new Prop<>("miningReadTimeout", 1000); // Must be > 0
+    public static final Prop<Integer> longPollTimeout = new Prop<>("longPollTimeout", 30000); // Must be >= 0
+    public static final Prop<Integer> verifyThreads = new Prop<>("verifyThreads", 0); // Must be >= 0, 0 is one per core
+    public static final Prop<Integer> verifyQueueSize = new Prop<>("verifyQueueSize", 256); // Must be > 0
     public static final Prop<String> letsencryptPath = new Prop<>("letsencryptPath", "");
     public static final Prop<String> keyStorePath = new Prop<>("keystorePath", "cert");
     public static final Prop<String> keyStorePass = new Prop<>("keystorePass", "certpass");
     
     public static final Prop<String> nodeAddresses = new Prop<>("nodeAddresses", ""); // Must be non-empty
+    public static final Prop<Integer> accountRefreshConcurrency = new Prop<>("accountRefreshConcurrency", 8); // Must be > 0
     public static final Prop<String> poolName = new Prop<>("poolName", "");
 
     public static final Prop<String> passphrase = new Prop<>("passphrase", ""); // Must be non-empty
@@ -24,13 +34,17 @@ public class Props {
     public static final Prop<String> dbUrl = new Prop<>("dbUrl", "");
     public static final Prop<String> dbUsername = new Prop<>("dbUsername", "");
     public static final Prop<String> dbPassword = new Prop<>("dbPassword", "");
+    public static final Prop<Integer> dbFlushInterval = new Prop<>("dbFlushInterval", 500); // Must be > 0
 
     public static final Prop<Boolean> testnet = new Prop<>("testnet", false);
 
     public static final Prop<Integer> nAvg = new Prop<>("nAvg", 360); // Must be ?
     public static final Prop<Integer> nMin = new Prop<>("nMin", 1); // Must be ?
+    public static final Prop<Boolean> verifyHitSums = new Prop<>("verifyHitSums", false);
     public static final Prop<Long> maxDeadline = new Prop<>("maxDeadline", Long.MAX_VALUE); // Must be > 0
     public static final Prop<Integer> processLag = new Prop<>("processLag", 10); // Must be > 0
+    public static final Prop<Integer> catchUpThreshold = new Prop<>("catchUpThreshold", 20); // Must be >= 0, 0 disables catching up
+    public static final Prop<Integer> catchUpBatchSize = new Prop<>("catchUpBatchSize", 1000); // Must be > 0
     public static final Prop<Integer> graceDeadlines = new Prop<>("graceDeadlines", 2); // Must be > 0
     public static final Prop<Integer> pocPlusBlock = new Prop<>("pocPlusBlock", 878_000);
 
@@ -91,11 +105,61 @@ public class Props {
             throw new IllegalArgumentException("Illegal server port: " + serverPort + " (Must be 0-2^16 exclusive)");
         }
 
+        int serverThreads = propertyService.getInt(Props.serverThreads);
+        if (serverThreads < 0) {
+            throw new IllegalArgumentException("Illegal serverThreads: " + serverThreads + " (Must be >= 0)");
+        }
+
+        int serverQueueSize = propertyService.getInt(Props.serverQueueSize);
+        if (serverQueueSize <= 0) {
+            throw new IllegalArgumentException("Illegal serverQueueSize: " + serverQueueSize + " (Must be > 0)");
+        }
+
+        int miningPort = propertyService.getInt(Props.miningPort);
+        if (miningPort < 0 || miningPort >= Math.pow(2, 16)) {
+            throw new IllegalArgumentException("Illegal mining port: " + miningPort + " (Must be 0-2^16 exclusive, 0 for the server port)");
+        }
+
+        int miningThreads = propertyService.getInt(Props.miningThreads);
+        if (miningThreads <= 0) {
+            throw new IllegalArgumentException("Illegal miningThreads: " + miningThreads + " (Must be > 0)");
+        }
+
+        int miningQueueSize = propertyService.getInt(Props.miningQueueSize);
+        if (miningQueueSize <= 0) {
+            throw new IllegalArgumentException("Illegal miningQueueSize: " + miningQueueSize + " (Must be > 0)");
+        }
+
+        int miningReadTimeout = propertyService.getInt(Props.miningReadTimeout);
+        if (miningReadTimeout <= 0) {
+            throw new IllegalArgumentException("Illegal miningReadTimeout: " + miningReadTimeout + " (Must be > 0)");
+        }
+
+        int longPollTimeout = propertyService.getInt(Props.longPollTimeout);
+        if (longPollTimeout < 0) {
+            throw new IllegalArgumentException("Illegal longPollTimeout: " + longPollTimeout + " (Must be >= 0)");
+        }
+
+        int verifyThreads = propertyService.getInt(Props.verifyThreads);
+        if (verifyThreads < 0) {
+            throw new IllegalArgumentException("Illegal verifyThreads: " + verifyThreads + " (Must be >= 0)");
+        }
+
+        int verifyQueueSize = propertyService.getInt(Props.verifyQueueSize);
+        if (verifyQueueSize <= 0) {
+            throw new IllegalArgumentException("Illegal verifyQueueSize: " + verifyQueueSize + " (Must be > 0)");
+        }
+
         String nodeAddress = propertyService.getString(Props.nodeAddresses);
         if (nodeAddress == null || Objects.equals(nodeAddress, "")) {
             throw new IllegalArgumentException("Illegal node address (empty)");
         }
 
+        int accountRefreshConcurrency = propertyService.getInt(Props.accountRefreshConcurrency);
+        if (accountRefreshConcurrency <= 0) {
+            throw new IllegalArgumentException("Illegal accountRefreshConcurrency: " + accountRefreshConcurrency + " (Must be > 0)");
+        }
+
         String poolName = propertyService.getString(Props.poolName);
         if (poolName == null || Objects.equals(poolName, "")) {
             throw new IllegalArgumentException("Illegal pool name (empty)");
@@ -106,6 +170,11 @@ public class Props {
             throw new IllegalArgumentException("Illegal passphrase (empty)");
         }
 
+        int dbFlushInterval = propertyService.getInt(Props.dbFlushInterval);
+        if (dbFlushInterval <= 0) {
+            throw new IllegalArgumentException("Illegal dbFlushInterval: " + dbFlushInterval + " (Must be > 0)");
+        }
+
         int nAvg = propertyService.getInt(Props.nAvg);
         if (nAvg < 12) {
             throw new IllegalArgumentException("Illegal nAvg: " + nAvg + " (Must be > 12)");
@@ -126,6 +195,16 @@ public class Props {
             throw new IllegalArgumentException("Illegal processLag: " + processLag + " (Must be > 1)");
         }
 
+        int catchUpThreshold = propertyService.getInt(Props.catchUpThreshold);
+        if (catchUpThreshold < 0) {
+            throw new IllegalArgumentException("Illegal catchUpThreshold: " + catchUpThreshold + " (Must be >= 0)");
+        }
+
+        int catchUpBatchSize = propertyService.getInt(Props.catchUpBatchSize);
+        if (catchUpBatchSize <= 0) {
+            throw new IllegalArgumentException("Illegal catchUpBatchSize: " + catchUpBatchSize + " (Must be > 0)");
+        }
+
         int graceDeadlines = propertyService.getInt(Props.graceDeadlines);
         if (graceDeadlines < 0) {
             throw new IllegalArgumentException("Illegal graceDeadlines: " + graceDeadlines + " (Must be >= 0)");
@@ -4,48 +4,54 @@ import signumj.entity.SignumAddress;
 import signumj.entity.SignumID;
 import signumj.entity.SignumValue;
 import signumj.service.NodeService;
+import burst.pool.db.tables.records.BestSubmissionsRecord;
 import burst.pool.db.tables.records.MinersRecord;
+import burst.pool.entity.MinerCommand;
 import burst.pool.entity.Payout;
 import burst.pool.entity.WonBlock;
 import burst.pool.miners.Deadline;
+import burst.pool.miners.DeadlineHistory;
 import burst.pool.miners.Miner;
-import burst.pool.miners.MinerMaths;
+import burst.pool.miners.MinerCapacity;
 import burst.pool.miners.PoolFeeRecipient;
 import burst.pool.pool.StoredSubmission;
 import burst.pool.storage.config.PropertyService;
 import burst.pool.storage.config.Props;
+import burst.pool.storage.persistent.MinerStateCache.MinerState;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
-import org.ehcache.Cache;
-import org.ehcache.CacheManager;
-import org.ehcache.config.CacheConfiguration;
-import org.ehcache.config.builders.CacheConfigurationBuilder;
-import org.ehcache.config.builders.CacheManagerBuilder;
-import org.ehcache.config.builders.ResourcePoolsBuilder;
 import org.flywaydb.core.Flyway;
 import org.flywaydb.core.api.FlywayException;
 import org.flywaydb.core.api.configuration.FluentConfiguration;
+import org.jooq.BatchBindStep;
 import org.jooq.DSLContext;
+import org.jooq.Record;
 import org.jooq.SQLDialect;
-import org.jooq.Table;
 import org.jooq.conf.Settings;
 import org.jooq.impl.DSL;
 import org.jooq.tools.jdbc.JDBCUtils;
 import org.mariadb.jdbc.MariaDbDataSource;
 import org.mariadb.jdbc.UrlParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.Field;
 import java.math.BigInteger;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.*;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.Function;
-import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static burst.pool.db.tables.BestSubmissions.BEST_SUBMISSIONS;
+import static burst.pool.db.tables.MinerCommands.MINER_COMMANDS;
 import static burst.pool.db.tables.MinerDeadlines.MINER_DEADLINES;
 import static burst.pool.db.tables.Miners.MINERS;
 import static burst.pool.db.tables.Payouts.PAYOUTS;
@@ -53,13 +59,15 @@ import static burst.pool.db.tables.PoolState.POOL_STATE;
 import static burst.pool.db.tables.WonBlocks.WON_BLOCKS;
 
 public class DbStorageService implements StorageService {
+    private static final Logger logger = LoggerFactory.getLogger(DbStorageService.class);
 
     private static final String POOL_STATE_FEE_RECIPIENT_BALANCE = "feeRecipientBalance";
     private static final String POOL_STATE_DONATION_RECIPIENT_BALANCE = "donationRecipientBalance";
     private static final String POOL_STATE_LAST_PROCESSED_BLOCK = "lastProcessedBlock";
+    private static final String POOL_STATE_LAST_COMMAND_HEIGHT = "lastCommandHeight";
 
     private final PropertyService propertyService;
-    private final MinerMaths minerMaths;
+    private final DeadlineHistory deadlineHistory;
     private final NodeService burstNodeService;
 
     private final ThreadLocal<Connection> localConnection = new ThreadLocal<>();
@@ -70,15 +78,27 @@ public class DbStorageService implements StorageService {
     private final HikariDataSource connectionPool;
     private final SQLDialect sqlDialect;
 
-    private final CacheManager cacheManager;
-    private final Map<Table<?>, Semaphore> cacheLocks;
-
-    public DbStorageService(PropertyService propertyService, MinerMaths minerMaths, NodeService burstNodeService) throws SQLException, FlywayException {
+    private final MinerStateCache minerCache = new MinerStateCache();
+    // Only the heights still to be processed and the last nAvg processed ones, older ones are evicted
+    private final Map<Long, List<StoredSubmission>> bestSubmissionsCache = new ConcurrentHashMap<>();
+    private final Map<String, Object> poolStateCache = new ConcurrentHashMap<>();
+    // -1 when unknown
+    private final AtomicInteger minerCount = new AtomicInteger(-1);
+    // Cache writes made inside a transaction, only published on commit
+    private final ThreadLocal<CacheTransaction> cacheTransaction = new ThreadLocal<>();
+
+    // Write-behind buffers, flushed to the DB as JDBC batches
+    private final Queue<PendingSubmission> pendingSubmissions = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<List<PendingDeadline>> transactionDeadlines = new ThreadLocal<>();
+    private final Object flushLock = new Object();
+    private final ScheduledExecutorService writeBehindExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    public DbStorageService(PropertyService propertyService, DeadlineHistory deadlineHistory, NodeService burstNodeService) throws SQLException, FlywayException {
         String url = propertyService.getString(Props.dbUrl);
         String username = propertyService.getString(Props.dbUsername);
         String password = propertyService.getString(Props.dbPassword);
         this.propertyService = propertyService;
-        this.minerMaths = minerMaths;
+        this.deadlineHistory = deadlineHistory;
         this.burstNodeService = burstNodeService;
 
         nMin = propertyService.getInt(Props.nMin);
@@ -123,15 +143,18 @@ public class DbStorageService implements StorageService {
         settings.setRenderSchema(false);
         connectionPool = new HikariDataSource(hikariConfig);
 
-        Table<?>[] tables = new Table[]{BEST_SUBMISSIONS, MINER_DEADLINES, MINERS, POOL_STATE};
-        cacheLocks = new HashMap<>();
-        CacheManagerBuilder cacheManagerBuilder = CacheManagerBuilder.newCacheManagerBuilder();
-        CacheConfiguration<String, Object> cacheConfiguration = CacheConfigurationBuilder.newCacheConfigurationBuilder(String.class, Object.class, ResourcePoolsBuilder.heap(1024 * 1024).build()).build();
-        for (Table<?> table : tables) {
-            cacheManagerBuilder = cacheManagerBuilder.withCache(table.getName(), cacheConfiguration);
-            cacheLocks.put(table, new Semaphore(1));
-        }
-        this.cacheManager = cacheManagerBuilder.build(true);
+        long flushInterval = propertyService.getInt(Props.dbFlushInterval);
+        writeBehindExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                flushPendingWrites();
+            } catch (Exception e) {
+                // Kept queued, and a failing task would not be scheduled again
+                logger.warn("Could not write the best submissions, will retry", e);
+            }
+        }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+
+        // The deadlines of the blocks not processed yet must all be kept when loading them
+        deadlineHistory.retainFrom(getLastProcessedBlock() + 1 - propertyService.getInt(Props.nAvg));
     }
 
     protected DSLContext getDslContext() {
@@ -177,52 +200,127 @@ public class DbStorageService implements StorageService {
         return flywayBuilder;
     }
 
-    private <T> T doOnCache(Table<?> table, Function<Cache<String, Object>, T> operation) {
-        Semaphore semaphore = cacheLocks.get(table);
-        try {
-            semaphore.acquire();
-        } catch (InterruptedException e) {
-            return null;
+    /**
+     * @return the cached state of the miner, loading its full row on a miss, or null if there is no such miner
+     */
+    private MinerState getMinerState(long accountId) {
+        MinerState state = getCachedMinerState(accountId);
+        if (state == null) {
+            MinersRecord record = useDslContext(context -> context.selectFrom(MINERS)
+                    .where(MINERS.ACCOUNT_ID.eq(accountId))
+                    .fetchAny());
+            if (record == null) {
+                return null;
+            }
+            state = cacheMinerState(record);
         }
-        try {
-            return operation.apply(cacheManager.getCache(table.getName(), String.class, Object.class));
-        } finally {
-            semaphore.release();
+        return state;
+    }
+
+    /**
+     * @return the state staged by the current transaction, or else the published one, or null
+     */
+    private MinerState getCachedMinerState(long accountId) {
+        CacheTransaction transaction = cacheTransaction.get();
+        if (transaction != null) {
+            MinerState state = transaction.miners.get(accountId);
+            if (state != null) {
+                return state;
+            }
         }
+        return minerCache.get(accountId);
     }
 
-    private void storeInCache(Table<?> table, String key, Object value) {
-        doOnCache(table, cache -> {
-            cache.put(key, value);
-            return null;
-        });
+    /**
+     * Caches a row read from the DB. Rows read inside a transaction may hold uncommitted values, so they stay staged until commit.
+     */
+    private MinerState cacheMinerState(MinersRecord record) {
+        CacheTransaction transaction = cacheTransaction.get();
+        if (transaction != null) {
+            return transaction.miners.computeIfAbsent(record.getAccountId(), accountId -> new MinerState(record));
+        }
+        return minerCache.putIfAbsent(new MinerState(record));
     }
 
-    private void removeFromCache(Table<?> table, String key) {
-        doOnCache(table, cache -> {
-            cache.remove(key);
-            return null;
-        });
+    /**
+     * @return the state to write to, a staged copy when inside a transaction, or null if there is no such miner
+     */
+    private MinerState getMinerStateForUpdate(long accountId) {
+        MinerState state = getMinerState(accountId);
+        CacheTransaction transaction = cacheTransaction.get();
+        if (state == null || transaction == null) {
+            return state;
+        }
+        return transaction.miners.computeIfAbsent(accountId, id -> new MinerState(state));
+    }
+
+    private Object getPoolState(String key) {
+        CacheTransaction transaction = cacheTransaction.get();
+        if (transaction != null && transaction.poolState.containsKey(key)) {
+            return transaction.poolState.get(key);
+        }
+        return poolStateCache.get(key);
     }
 
-    @SuppressWarnings("unchecked")
-    private <T> T getFromCacheOr(Table<?> table, String key, Supplier<T> supplier) {
-        return doOnCache(table, cache -> (T) Optional.ofNullable(cache.get(key)).orElseGet(() -> {
-            T object = supplier.get();
-            if (object != null) cache.put(key, object);
-            return object;
-        }));
+    private void setPoolState(String key, Object value) {
+        CacheTransaction transaction = cacheTransaction.get();
+        if (transaction != null) {
+            transaction.poolState.put(key, value);
+        } else {
+            poolStateCache.put(key, value);
+        }
     }
 
-    private Miner minerFromRecord(MinersRecord record) {
-        return new Miner(minerMaths, propertyService, SignumAddress.fromId(SignumID.fromLong(record.getAccountId())), new DbMinerStore(record.getAccountId()));
+    private void invalidateMinerCount() {
+        CacheTransaction transaction = cacheTransaction.get();
+        if (transaction != null) {
+            transaction.minerCountChanged = true;
+        } else {
+            minerCount.set(-1);
+        }
+    }
+
+    private void publishCacheTransaction() {
+        CacheTransaction transaction = cacheTransaction.get();
+        for (MinerState staged : transaction.miners.values()) {
+            MinerState state = minerCache.putIfAbsent(staged);
+            if (state != staged) {
+                state.update(staged);
+            }
+        }
+        poolStateCache.putAll(transaction.poolState);
+        if (transaction.minerCountChanged) {
+            minerCount.set(-1);
+        }
+        transaction.clear();
     }
 
-    private void resetCache() {
-        synchronized (cacheManager) {
-            cacheManager.close();
-            cacheManager.init();
+    /**
+     * @return the miner of the given state, built the first time with the given deadlines or, if null, the stored ones
+     */
+    private Miner minerOf(MinerState state, List<Deadline> deadlines) {
+        Miner miner = state.getMiner();
+        if (miner == null) {
+            synchronized (state) {
+                miner = state.getMiner();
+                if (miner == null) {
+                    SignumAddress address = SignumAddress.fromId(SignumID.fromLong(state.getAccountId()));
+                    DbMinerStore store = new DbMinerStore(state.getAccountId());
+                    miner = deadlines == null ? new Miner(propertyService, deadlineHistory, address, store)
+                            : new Miner(propertyService, deadlineHistory, address, store, deadlines);
+                    state.setMiner(miner);
+                }
+            }
         }
+        return miner;
+    }
+
+    private static Deadline deadlineFromRecord(Record record) {
+        return new Deadline(record.get(MINER_DEADLINES.DEADLINE),
+                record.get(MINER_DEADLINES.BASE_TARGET),
+                record.get(MINER_DEADLINES.SHARE_PERCENT), record.get(MINER_DEADLINES.HEIGHT),
+                record.field(MINER_DEADLINES.BOOST) != null ? record.get(MINER_DEADLINES.BOOST) : 0d,
+                record.field(MINER_DEADLINES.BOOST_POOL) != null ? record.get(MINER_DEADLINES.BOOST_POOL) : 0d);
     }
 
     @Override
@@ -234,6 +332,8 @@ public class DbStorageService implements StorageService {
         Connection connection = connectionPool.getConnection();
         connection.setAutoCommit(false);
         localConnection.set(connection);
+        transactionDeadlines.set(new ArrayList<>());
+        cacheTransaction.set(new CacheTransaction());
 
         return this;
     }
@@ -241,7 +341,9 @@ public class DbStorageService implements StorageService {
     @Override
     public void commitTransaction() throws Exception {
         if (localConnection.get() != null) {
+            writeTransactionDeadlines();
             localConnection.get().commit();
+            publishCacheTransaction();
         } else {
             throw new IllegalStateException("Not in transaction");
         }
@@ -250,41 +352,63 @@ public class DbStorageService implements StorageService {
     @Override
     public void rollbackTransaction() throws Exception {
         if (localConnection.get() != null) {
+            transactionDeadlines.get().clear();
             localConnection.get().rollback();
-            resetCache();
+            // Nothing was published, so the cache still matches the DB
+            cacheTransaction.get().clear();
         } else {
             throw new IllegalStateException("Not in transaction");
         }
     }
 
-    private void recalculateMinerCount() { // TODO increment would be faster...
-        useDslContextVoid(context -> storeInCache(MINERS, "count", context.selectCount()
-                .from(MINERS)
-                .fetchOne(0, int.class)));
-    }
-
     @Override
     public int getMinerCount() {
-        return getFromCacheOr(MINERS, "count", () -> useDslContext(context -> context.selectCount()
-                .from(MINERS)
-                .fetchOne(0, int.class)));
+        int count = minerCount.get();
+        if (count < 0) {
+            count = useDslContext(context -> context.selectCount()
+                    .from(MINERS)
+                    .fetchOne(0, int.class));
+            minerCount.compareAndSet(-1, count);
+        }
+        return count;
     }
 
     @Override
     public List<Miner> getMiners() {
-        return useDslContext(context -> context.select(MINERS.ACCOUNT_ID)
-                .from(MINERS)
-                .fetch(id -> getMiner(id.get(MINERS.ACCOUNT_ID))));
+        // One query for all miner rows, plus a single one for all deadlines if any miner is not cached yet
+        return useDslContext(context -> {
+            List<MinersRecord> records = context.selectFrom(MINERS).fetch();
+            Map<Long, List<Deadline>> deadlines = null;
+            List<Miner> miners = new ArrayList<>(records.size());
+            for (MinersRecord record : records) {
+                MinerState state = getCachedMinerState(record.getAccountId());
+                if (state == null) {
+                    state = cacheMinerState(record);
+                }
+                if (state.getMiner() == null) {
+                    if (deadlines == null) {
+                        deadlines = context.select(MINER_DEADLINES.ACCOUNT_ID, MINER_DEADLINES.BASE_TARGET, MINER_DEADLINES.SHARE_PERCENT, MINER_DEADLINES.HEIGHT,
+                                MINER_DEADLINES.DEADLINE, MINER_DEADLINES.BOOST, MINER_DEADLINES.BOOST_POOL)
+                                .from(MINER_DEADLINES)
+                                .fetch()
+                                .stream()
+                                .collect(Collectors.groupingBy(deadline -> deadline.get(MINER_DEADLINES.ACCOUNT_ID),
+                                        Collectors.mapping(DbStorageService::deadlineFromRecord, Collectors.toList())));
+                    }
+                    minerOf(state, deadlines.getOrDefault(record.getAccountId(), Collections.emptyList()));
+                }
+                miners.add(state.getMiner());
+            }
+            return miners;
+        });
     }
 
     @Override
     public List<Miner> getMinersFiltered() {
-        return useDslContext(context -> context.select(MINERS.ACCOUNT_ID)
-                .from(MINERS)
-                .fetch(id -> getMiner(id.get(MINERS.ACCOUNT_ID)))
+        return getMiners()
                 .stream()
                 .filter(miner -> miner.getNConf() >= nMin)
-                .collect(Collectors.toList()));
+                .collect(Collectors.toList());
     }
 
     @Override
@@ -293,13 +417,8 @@ public class DbStorageService implements StorageService {
     }
 
     private Miner getMiner(long id) {
-        try {
-            return getFromCacheOr(MINERS, Long.toUnsignedString(id), () -> useDslContext(context -> context.selectFrom(MINERS)
-                    .where(MINERS.ACCOUNT_ID.eq(id))
-                    .fetchAny(this::minerFromRecord)));
-        } catch (NullPointerException e) {
-            return null;
-        }
+        MinerState state = getMinerState(id);
+        return state == null ? null : minerOf(state, null);
     }
 
     /**
@@ -321,12 +440,40 @@ public class DbStorageService implements StorageService {
                         propertyService.getInt(Props.donationPercent),
                         0L, 0d, 0d, SignumValue.fromSigna(propertyService.getFloat(Props.defaultMinimumPayout)).toNQT().longValueExact(), "", "")
                 .execute();
-                recalculateMinerCount();
+                invalidateMinerCount();
                 return getMiner(address);
             }
         });
     }
 
+    @Override
+    public void updateMinerCapacities(List<MinerCapacity> capacities, double poolCapacity) {
+        if (capacities.isEmpty()) {
+            return;
+        }
+        // A single batched statement for all miners instead of three updates per miner
+        useDslContextVoid(context -> {
+            BatchBindStep batch = context.batch(context.update(MINERS)
+                    .set(MINERS.SHARED_CAPACITY, DSL.param("sharedCapacity", MINERS.SHARED_CAPACITY.getDataType()))
+                    .set(MINERS.ESTIMATED_CAPACITY, DSL.param("estimatedCapacity", MINERS.ESTIMATED_CAPACITY.getDataType()))
+                    .set(MINERS.SHARE, DSL.param("share", MINERS.SHARE.getDataType()))
+                    .where(MINERS.ACCOUNT_ID.eq(DSL.param("accountId", MINERS.ACCOUNT_ID.getDataType()))));
+            for (MinerCapacity capacity : capacities) {
+                batch = batch.bind(capacity.getSharedCapacity(), capacity.getTotalCapacity(), capacity.getShare(poolCapacity),
+                        capacity.getMiner().getAddress().getSignumID().getSignedLongId());
+            }
+            batch.execute();
+        });
+        for (MinerCapacity capacity : capacities) {
+            MinerState state = getMinerStateForUpdate(capacity.getMiner().getAddress().getSignumID().getSignedLongId());
+            if (state != null) {
+                state.setSharedCapacity(capacity.getSharedCapacity());
+                state.setEstimatedCapacity(capacity.getTotalCapacity());
+                state.setShare(capacity.getShare(poolCapacity));
+            }
+        }
+    }
+
     @Override
     public PoolFeeRecipient getPoolFeeRecipient() {
         return new PoolFeeRecipient(propertyService, new DbRecipientStore(POOL_STATE_FEE_RECIPIENT_BALANCE), propertyService.getSignumAddress(Props.feeRecipient));
@@ -343,18 +490,23 @@ public class DbStorageService implements StorageService {
                     .key(POOL_STATE.KEY)
                     .values(POOL_STATE_LAST_PROCESSED_BLOCK, Integer.toString(block))
                     .execute();
-            storeInCache(POOL_STATE, POOL_STATE_LAST_PROCESSED_BLOCK, block);
+            setPoolState(POOL_STATE_LAST_PROCESSED_BLOCK, block);
         });
     }
 
     @Override
     public int getLastProcessedBlock() {
-        try {
-            return getFromCacheOr(POOL_STATE, POOL_STATE_LAST_PROCESSED_BLOCK, () -> useDslContext(context -> context.select(POOL_STATE.VALUE)
+        Integer lastProcessedBlock = (Integer) getPoolState(POOL_STATE_LAST_PROCESSED_BLOCK);
+        if (lastProcessedBlock == null) {
+            lastProcessedBlock = useDslContext(context -> context.select(POOL_STATE.VALUE)
                     .from(POOL_STATE)
                     .where(POOL_STATE.KEY.eq(POOL_STATE_LAST_PROCESSED_BLOCK))
-                    .fetchAny(result -> Integer.parseInt(result.get(POOL_STATE.VALUE)))));
-        } catch (NullPointerException e) {
+                    .fetchAny(result -> Integer.parseInt(result.get(POOL_STATE.VALUE))));
+        }
+        if (lastProcessedBlock != null) {
+            setPoolState(POOL_STATE_LAST_PROCESSED_BLOCK, lastProcessedBlock);
+            return lastProcessedBlock;
+        } else {
             int height = (int) burstNodeService.getMiningInfo().blockingFirst().getHeight() - ((propertyService.getInt(Props.processLag) + propertyService.getInt(Props.nAvg)) * 2);
             if (height < 0) height = 0;
             setLastProcessedBlock(height);
@@ -366,39 +518,137 @@ public class DbStorageService implements StorageService {
     public void incrementLastProcessedBlock() {
         int block = getLastProcessedBlock() + 1;
         setLastProcessedBlock(block);
+        long evictBelow = block - propertyService.getInt(Props.nAvg);
+        bestSubmissionsCache.keySet().removeIf(height -> height < evictBelow);
+    }
+
+    @Override
+    public int getLastCommandHeight() {
+        Integer lastCommandHeight = (Integer) getPoolState(POOL_STATE_LAST_COMMAND_HEIGHT);
+        if (lastCommandHeight == null) {
+            lastCommandHeight = useDslContext(context -> context.select(POOL_STATE.VALUE)
+                    .from(POOL_STATE)
+                    .where(POOL_STATE.KEY.eq(POOL_STATE_LAST_COMMAND_HEIGHT))
+                    .fetchAny(result -> Integer.parseInt(result.get(POOL_STATE.VALUE))));
+            if (lastCommandHeight == null) {
+                return -1;
+            }
+            setPoolState(POOL_STATE_LAST_COMMAND_HEIGHT, lastCommandHeight);
+        }
+        return lastCommandHeight;
+    }
+
+    @Override
+    public void setLastCommandHeight(int height) {
+        useDslContextVoid(context -> {
+            context.mergeInto(POOL_STATE, POOL_STATE.KEY, POOL_STATE.VALUE)
+                    .key(POOL_STATE.KEY)
+                    .values(POOL_STATE_LAST_COMMAND_HEIGHT, Integer.toString(height))
+                    .execute();
+            setPoolState(POOL_STATE_LAST_COMMAND_HEIGHT, height);
+        });
+    }
+
+    @Override
+    public void addMinerCommand(MinerCommand command) {
+        useDslContextVoid(context -> context.insertInto(MINER_COMMANDS, MINER_COMMANDS.TRANSACTION_ID, MINER_COMMANDS.ACCOUNT_ID, MINER_COMMANDS.HEIGHT,
+                MINER_COMMANDS.COMMAND, MINER_COMMANDS.ARGUMENT)
+                .values(command.getTransactionId().getSignedLongId(), command.getMiner().getSignumID().getSignedLongId(), command.getHeight(),
+                        command.getCommand(), command.getArgument())
+                .execute());
     }
 
     @Override
     public Map<Long, List<StoredSubmission>> getBestSubmissions() {
-        // We don't need to cache as getBestSubmissionForBlock will read from cache
-        return useDslContext(context -> context.select(BEST_SUBMISSIONS.HEIGHT)
-                .from(BEST_SUBMISSIONS)
+        // Read past the cache so the old heights do not fill it, the cached heights can have submissions not written yet
+        Map<Long, List<StoredSubmission>> bestSubmissions = useDslContext(context -> context.selectFrom(BEST_SUBMISSIONS)
                 .fetch()
                 .stream()
-                .distinct()
-                .collect(Collectors.toMap(height -> height.get(BEST_SUBMISSIONS.HEIGHT), height -> getBestSubmissionsForBlock(height.get(BEST_SUBMISSIONS.HEIGHT)))));
+                .collect(Collectors.groupingBy(BestSubmissionsRecord::getHeight, Collectors.mapping(DbStorageService::toStoredSubmission, Collectors.toList()))));
+        bestSubmissions.putAll(bestSubmissionsCache);
+        return bestSubmissions;
+    }
+
+    private static StoredSubmission toStoredSubmission(BestSubmissionsRecord record) {
+        return new StoredSubmission(SignumAddress.fromId(SignumID.fromLong(record.getAccountId())), new BigInteger(record.getNonce()), record.getDeadline());
     }
 
     @Override
     public List<StoredSubmission> getBestSubmissionsForBlock(long blockHeight) {
-        try {
-            return getFromCacheOr(BEST_SUBMISSIONS, Long.toString(blockHeight), () -> useDslContext(context -> context.selectFrom(BEST_SUBMISSIONS)
+        List<StoredSubmission> submissions = bestSubmissionsCache.get(blockHeight);
+        if (submissions == null) {
+            submissions = useDslContext(context -> context.selectFrom(BEST_SUBMISSIONS)
                     .where(BEST_SUBMISSIONS.HEIGHT.eq(blockHeight))
-                    .fetch(response -> new StoredSubmission(SignumAddress.fromId(SignumID.fromLong(response.getAccountId())), new BigInteger(response.getNonce()), response.getDeadline()))));
-        } catch (NullPointerException e) {
-            return null;
+                    .fetch(DbStorageService::toStoredSubmission));
+            List<StoredSubmission> cached = bestSubmissionsCache.putIfAbsent(blockHeight, submissions);
+            if (cached != null) {
+                submissions = cached;
+            }
         }
+        return submissions;
     }
 
     @Override
     public void addBestSubmissionForBlock(long blockHeight, StoredSubmission submission) {
-        List<StoredSubmission> submissions = getBestSubmissionsForBlock(blockHeight);
-        if (submissions == null) submissions = new ArrayList<>();
-        useDslContextVoid(context -> context.insertInto(BEST_SUBMISSIONS, BEST_SUBMISSIONS.HEIGHT, BEST_SUBMISSIONS.ACCOUNT_ID, BEST_SUBMISSIONS.NONCE, BEST_SUBMISSIONS.DEADLINE)
-                .values(blockHeight, submission.getMiner().getSignumID().getSignedLongId(), submission.getNonce().toString(), submission.getDeadline())
-                .execute());
-        submissions.add(submission);
-        storeInCache(BEST_SUBMISSIONS, Long.toUnsignedString(blockHeight), submissions);
+        // The cache is updated right away, the insert is written behind by flushPendingWrites
+        synchronized (pendingSubmissions) {
+            List<StoredSubmission> submissions = getBestSubmissionsForBlock(blockHeight);
+            submissions = submissions == null ? new ArrayList<>() : new ArrayList<>(submissions);
+            submissions.add(submission);
+            bestSubmissionsCache.put(blockHeight, submissions);
+            pendingSubmissions.add(new PendingSubmission(blockHeight, submission));
+        }
+    }
+
+    @Override
+    public void flushPendingWrites() {
+        // Held until the batch is written, so returning from here means the DB is up to date and throwing that it is not
+        synchronized (flushLock) {
+            List<PendingSubmission> submissions = new ArrayList<>();
+            synchronized (pendingSubmissions) {
+                PendingSubmission pending;
+                while ((pending = pendingSubmissions.poll()) != null) {
+                    submissions.add(pending);
+                }
+            }
+            if (submissions.isEmpty()) {
+                return;
+            }
+
+            // Always on a connection of its own, submissions must survive a rollback of the block being processed
+            try (DSLContext context = DSL.using(connectionPool, sqlDialect, settings)) {
+                BatchBindStep batch = context.batch(context.insertInto(BEST_SUBMISSIONS, BEST_SUBMISSIONS.HEIGHT, BEST_SUBMISSIONS.ACCOUNT_ID, BEST_SUBMISSIONS.NONCE, BEST_SUBMISSIONS.DEADLINE)
+                        .values((Long) null, (Long) null, (String) null, (Long) null));
+                for (PendingSubmission pending : submissions) {
+                    batch = batch.bind(pending.height, pending.submission.getMiner().getSignumID().getSignedLongId(),
+                            pending.submission.getNonce().toString(), pending.submission.getDeadline());
+                }
+                batch.execute();
+            } catch (RuntimeException e) {
+                pendingSubmissions.addAll(submissions);
+                throw e;
+            }
+        }
+    }
+
+    private void writeTransactionDeadlines() {
+        List<PendingDeadline> deadlines = transactionDeadlines.get();
+        if (deadlines == null || deadlines.isEmpty()) {
+            return;
+        }
+        useDslContextVoid(context -> {
+            BatchBindStep batch = context.batch(context.mergeInto(MINER_DEADLINES, MINER_DEADLINES.ACCOUNT_ID, MINER_DEADLINES.SHARE_PERCENT,
+                    MINER_DEADLINES.HEIGHT, MINER_DEADLINES.DEADLINE, MINER_DEADLINES.BASE_TARGET,
+                    MINER_DEADLINES.BOOST, MINER_DEADLINES.BOOST_POOL)
+                    .key(MINER_DEADLINES.ACCOUNT_ID, MINER_DEADLINES.HEIGHT)
+                    .values((Long) null, (Integer) null, (Long) null, (Long) null, (Long) null, (Double) null, (Double) null));
+            for (PendingDeadline pending : deadlines) {
+                batch = batch.bind(pending.accountId, pending.deadline.getSharePercent(), pending.height, pending.deadline.getDeadline(),
+                        pending.deadline.getBaseTarget(), pending.deadline.getBoost(), pending.deadline.getBoostPool());
+            }
+            batch.execute();
+        });
+        deadlines.clear();
     }
 
     @Override
@@ -438,27 +688,33 @@ public class DbStorageService implements StorageService {
         if (localConnection.get() != null) {
             localConnection.get().close();
             localConnection.set(null);
+            transactionDeadlines.remove();
+            cacheTransaction.remove();
         } else {
+            writeBehindExecutor.shutdown();
+            flushPendingWrites();
             connectionPool.close();
-            cacheManager.close();
         }
     }
 
     private class DbMinerStore implements MinerStore {
         private final long accountId;
-        private final String accountIdStr;
 
         private DbMinerStore(long accountId) {
             this.accountId = accountId;
-            this.accountIdStr = Long.toUnsignedString(accountId);
+        }
+
+        private MinerState state() {
+            return getMinerState(accountId);
+        }
+
+        private MinerState stateForUpdate() {
+            return getMinerStateForUpdate(accountId);
         }
 
         @Override
         public SignumValue getPendingBalance() {
-            return getFromCacheOr(MINERS, accountIdStr + "pending", () -> useDslContext(context -> context.select(MINERS.PENDING_BALANCE)
-                    .from(MINERS)
-                    .where(MINERS.ACCOUNT_ID.eq(accountId))
-                    .fetchAny(record -> SignumValue.fromNQT(record.get(MINERS.PENDING_BALANCE)))));
+            return state().getPendingBalance();
         }
 
         @Override
@@ -467,16 +723,12 @@ public class DbStorageService implements StorageService {
                     .set(MINERS.PENDING_BALANCE, pendingBalance.toNQT().longValueExact())
                     .where(MINERS.ACCOUNT_ID.eq(accountId))
                     .execute());
-            storeInCache(MINERS, accountIdStr + "pending", pendingBalance);
+            stateForUpdate().setPendingBalance(pendingBalance);
         }
 
         @Override
         public double getSharedCapacity() {
-            return getFromCacheOr(MINERS, accountIdStr + "sharedCapacity", () -> useDslContext(context -> context.select(MINERS.SHARED_CAPACITY)
-                    .from(MINERS)
-                    .where(MINERS.ACCOUNT_ID.eq(accountId))
-                    .fetchAny()
-                    .get(MINERS.SHARED_CAPACITY)));
+            return state().getSharedCapacity();
         }
 
         @Override
@@ -485,16 +737,12 @@ public class DbStorageService implements StorageService {
                     .set(MINERS.SHARED_CAPACITY, sharedCapacity)
                     .where(MINERS.ACCOUNT_ID.eq(accountId))
                     .execute());
-            storeInCache(MINERS, accountIdStr + "sharedCapacity", sharedCapacity);
+            stateForUpdate().setSharedCapacity(sharedCapacity);
         }
         
         @Override
         public double getTotalCapacity() {
-            return getFromCacheOr(MINERS, accountIdStr + "estimated", () -> useDslContext(context -> context.select(MINERS.ESTIMATED_CAPACITY)
-                    .from(MINERS)
-                    .where(MINERS.ACCOUNT_ID.eq(accountId))
-                    .fetchAny()
-                    .get(MINERS.ESTIMATED_CAPACITY)));
+            return state().getEstimatedCapacity();
         }
 
         @Override
@@ -503,17 +751,13 @@ public class DbStorageService implements StorageService {
                     .set(MINERS.ESTIMATED_CAPACITY, estimatedCapacity)
                     .where(MINERS.ACCOUNT_ID.eq(accountId))
                     .execute());
-            storeInCache(MINERS, accountIdStr + "estimated", estimatedCapacity);
+            stateForUpdate().setEstimatedCapacity(estimatedCapacity);
         }
         
 
         @Override
         public int getSharePercent() {
-            return getFromCacheOr(MINERS, accountIdStr + "sharePrecent", () -> useDslContext(context -> context.select(MINERS.SHARE_PERCENT)
-                    .from(MINERS)
-                    .where(MINERS.ACCOUNT_ID.eq(accountId))
-                    .fetchAny()
-                    .get(MINERS.SHARE_PERCENT)));
+            return state().getSharePercent();
         }
 
         @Override
@@ -522,16 +766,12 @@ public class DbStorageService implements StorageService {
                     .set(MINERS.SHARE_PERCENT, sharePercent)
                     .where(MINERS.ACCOUNT_ID.eq(accountId))
                     .execute());
-            storeInCache(MINERS, accountIdStr + "sharePrecent", sharePercent);
+            stateForUpdate().setSharePercent(sharePercent);
         }
 
         @Override
         public int getDonationPercent() {
-            return getFromCacheOr(MINERS, accountIdStr + "donationPrecent", () -> useDslContext(context -> context.select(MINERS.DONATION_PERCENT)
-                    .from(MINERS)
-                    .where(MINERS.ACCOUNT_ID.eq(accountId))
-                    .fetchAny()
-                    .get(MINERS.DONATION_PERCENT)));
+            return state().getDonationPercent();
         }
 
         @Override
@@ -540,17 +780,13 @@ public class DbStorageService implements StorageService {
                     .set(MINERS.DONATION_PERCENT, donationPercent)
                     .where(MINERS.ACCOUNT_ID.eq(accountId))
                     .execute());
-            storeInCache(MINERS, accountIdStr + "donationPrecent", donationPercent);
+            stateForUpdate().setDonationPercent(donationPercent);
         }
 
 
         @Override
         public double getShare() {
-            return getFromCacheOr(MINERS, accountIdStr + "share", () -> useDslContext(context -> context.select(MINERS.SHARE)
-                    .from(MINERS)
-                    .where(MINERS.ACCOUNT_ID.eq(accountId))
-                    .fetchAny()
-                    .get(MINERS.SHARE)));
+            return state().getShare();
         }
 
         @Override
@@ -559,15 +795,12 @@ public class DbStorageService implements StorageService {
                     .set(MINERS.SHARE, share)
                     .where(MINERS.ACCOUNT_ID.eq(accountId))
                     .execute());
-            storeInCache(MINERS, accountIdStr + "share", share);
+            stateForUpdate().setShare(share);
         }
 
         @Override
         public SignumValue getMinimumPayout() {
-            return getFromCacheOr(MINERS, accountIdStr + "minpayout", () -> useDslContext(context -> context.select(MINERS.MINIMUM_PAYOUT)
-                    .from(MINERS)
-                    .where(MINERS.ACCOUNT_ID.eq(accountId))
-                    .fetchAny(record -> SignumValue.fromNQT(record.get(MINERS.MINIMUM_PAYOUT)))));
+            return state().getMinimumPayout();
         }
 
         @Override
@@ -576,7 +809,7 @@ public class DbStorageService implements StorageService {
                     .set(MINERS.MINIMUM_PAYOUT, minimumPayout.toNQT().longValueExact())
                     .where(MINERS.ACCOUNT_ID.eq(accountId))
                     .execute());
-            storeInCache(MINERS, accountIdStr + "minpayout", minimumPayout);
+            stateForUpdate().setMinimumPayout(minimumPayout);
         }
 
         @Override
@@ -586,25 +819,61 @@ public class DbStorageService implements StorageService {
                     .from(MINER_DEADLINES)
                     .where(MINER_DEADLINES.ACCOUNT_ID.eq(accountId))
                     .fetch()
-                    .map(record -> new Deadline(BigInteger.valueOf(record.get(MINER_DEADLINES.DEADLINE)),
-                            BigInteger.valueOf(record.get(MINER_DEADLINES.BASE_TARGET)),
-                            record.get(MINER_DEADLINES.SHARE_PERCENT), record.get(MINER_DEADLINES.HEIGHT),
-                            record.field(MINER_DEADLINES.BOOST) != null ? record.get(MINER_DEADLINES.BOOST) : 0d,
-                            record.field(MINER_DEADLINES.BOOST_POOL) != null ? record.get(MINER_DEADLINES.BOOST_POOL) : 0d)));
+                    .map(DbStorageService::deadlineFromRecord));
         }
 
         @Override
         public void setOrUpdateDeadline(long height, Deadline deadline) {
+            List<PendingDeadline> deadlines = transactionDeadlines.get();
+            if (deadlines != null) {
+                // Batched with the others and written on commit
+                deadlines.add(new PendingDeadline(accountId, height, deadline));
+                return;
+            }
             useDslContextVoid(context -> context.mergeInto(MINER_DEADLINES, MINER_DEADLINES.ACCOUNT_ID, MINER_DEADLINES.SHARE_PERCENT,
                     MINER_DEADLINES.HEIGHT, MINER_DEADLINES.DEADLINE, MINER_DEADLINES.BASE_TARGET,
                     MINER_DEADLINES.BOOST, MINER_DEADLINES.BOOST_POOL)
                     .key(MINER_DEADLINES.ACCOUNT_ID, MINER_DEADLINES.HEIGHT)
-                    .values(accountId, deadline.getSharePercent(), height, deadline.getDeadline().longValue(), deadline.getBaseTarget().longValue(),
+                    .values(accountId, deadline.getSharePercent(), height, deadline.getDeadline(), deadline.getBaseTarget(),
                             deadline.getBoost(), deadline.getBoostPool())
                     .execute());
         }
     }
 
+    private static final class CacheTransaction {
+        private final Map<Long, MinerState> miners = new HashMap<>();
+        private final Map<String, Object> poolState = new HashMap<>();
+        private boolean minerCountChanged;
+
+        private void clear() {
+            miners.clear();
+            poolState.clear();
+            minerCountChanged = false;
+        }
+    }
+
+    private static final class PendingSubmission {
+        private final long height;
+        private final StoredSubmission submission;
+
+        private PendingSubmission(long height, StoredSubmission submission) {
+            this.height = height;
+            this.submission = submission;
+        }
+    }
+
+    private static final class PendingDeadline {
+        private final long accountId;
+        private final long height;
+        private final Deadline deadline;
+
+        private PendingDeadline(long accountId, long height, Deadline deadline) {
+            this.accountId = accountId;
+            this.height = height;
+            this.deadline = deadline;
+        }
+    }
+
     private final class DbRecipientStore implements MinerStore.FeeRecipientStore {
         
         private final String key;
@@ -615,15 +884,18 @@ public class DbStorageService implements StorageService {
 
         @Override
         public SignumValue getPendingBalance() {
-            try {
-                SignumValue pending = getFromCacheOr(POOL_STATE, key, () -> useDslContext(context -> context.select(POOL_STATE.VALUE)
+            SignumValue pending = (SignumValue) getPoolState(key);
+            if (pending == null) {
+                pending = useDslContext(context -> context.select(POOL_STATE.VALUE)
                         .from(POOL_STATE)
                         .where(POOL_STATE.KEY.eq(key))
-                        .fetchAny(record -> SignumValue.fromNQT(record.get(POOL_STATE.VALUE)))));
-                return pending == null ? SignumValue.ZERO : pending;
-            } catch (NullPointerException e) {
-                return SignumValue.fromNQT(0);
+                        .fetchAny(record -> SignumValue.fromNQT(record.get(POOL_STATE.VALUE))));
+                if (pending == null) {
+                    return SignumValue.ZERO;
+                }
+                setPoolState(key, pending);
             }
+            return pending;
         }
 
         @Override
@@ -632,7 +904,7 @@ public class DbStorageService implements StorageService {
                     .key(POOL_STATE.KEY)
                     .values(key, pending.toNQT().toString())
                     .execute());
-            storeInCache(POOL_STATE, key, pending);
+            setPoolState(key, pending);
         }
     }
 }
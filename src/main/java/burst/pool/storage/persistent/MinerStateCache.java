@@ -0,0 +1,296 @@
+package burst.pool.storage.persistent;
+
+import java.util.concurrent.locks.StampedLock;
+
+import signumj.entity.SignumValue;
+import burst.pool.db.tables.records.MinersRecord;
+import burst.pool.miners.Miner;
+
+/**
+ * Concurrent cache of miner state keyed by the (primitive) account id.
+ *
+ * Entries are spread over lock stripes, each an open addressing hash table. Lookups are
+ * optimistic reads that only fall back to the stripe read lock if a writer got in the way,
+ * so readers never block each other.
+ */
+public class MinerStateCache {
+    private static final int STRIPE_BITS = 6;
+    private static final int INITIAL_STRIPE_CAPACITY = 16;
+
+    private final Stripe[] stripes = new Stripe[1 << STRIPE_BITS];
+
+    public MinerStateCache() {
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    private static int hash(long accountId) {
+        int h = (int) (accountId ^ (accountId >>> 32)) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private Stripe stripeFor(int hash) {
+        return stripes[hash >>> (32 - STRIPE_BITS)];
+    }
+
+    /**
+     * @return the cached state of the account or null
+     */
+    public MinerState get(long accountId) {
+        int hash = hash(accountId);
+        Stripe stripe = stripeFor(hash);
+        long stamp = stripe.lock.tryOptimisticRead();
+        MinerState state = find(stripe.keys, stripe.states, accountId, hash);
+        if (!stripe.lock.validate(stamp)) {
+            stamp = stripe.lock.readLock();
+            try {
+                state = find(stripe.keys, stripe.states, accountId, hash);
+            } finally {
+                stripe.lock.unlockRead(stamp);
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Caches the state unless the account already has one.
+     * @return the state now cached for the account
+     */
+    public MinerState putIfAbsent(MinerState state) {
+        long accountId = state.getAccountId();
+        int hash = hash(accountId);
+        Stripe stripe = stripeFor(hash);
+        long stamp = stripe.lock.writeLock();
+        try {
+            MinerState existing = find(stripe.keys, stripe.states, accountId, hash);
+            if (existing != null) {
+                return existing;
+            }
+            if ((stripe.size + 1) * 4 > stripe.keys.length * 3) {
+                stripe.resize();
+            }
+            stripe.insert(accountId, hash, state);
+            return state;
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            long stamp = stripe.lock.writeLock();
+            try {
+                stripe.keys = new long[INITIAL_STRIPE_CAPACITY];
+                stripe.states = new MinerState[INITIAL_STRIPE_CAPACITY];
+                stripe.size = 0;
+            } finally {
+                stripe.lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    private static MinerState find(long[] keys, MinerState[] states, long accountId, int hash) {
+        // Arrays may be torn during an optimistic read, the caller validates afterwards
+        if (keys.length != states.length) {
+            return null;
+        }
+        int mask = keys.length - 1;
+        for (int i = hash & mask, probes = 0; probes < keys.length; i = (i + 1) & mask, probes++) {
+            MinerState state = states[i];
+            if (state == null) {
+                return null;
+            }
+            if (keys[i] == accountId) {
+                return state;
+            }
+        }
+        return null;
+    }
+
+    private static final class Stripe {
+        private final StampedLock lock = new StampedLock();
+        private long[] keys = new long[INITIAL_STRIPE_CAPACITY];
+        private MinerState[] states = new MinerState[INITIAL_STRIPE_CAPACITY];
+        private int size;
+
+        private void insert(long accountId, int hash, MinerState state) {
+            int mask = keys.length - 1;
+            int i = hash & mask;
+            while (states[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = accountId;
+            states[i] = state;
+            size++;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            MinerState[] oldStates = states;
+            keys = new long[oldKeys.length * 2];
+            states = new MinerState[oldKeys.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldStates[i] != null) {
+                    insert(oldKeys[i], hash(oldKeys[i]), oldStates[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Typed, cached copy of a miners table row plus the miner built for it.
+     */
+    public static class MinerState {
+        private static final int PENDING_BALANCE = 1;
+        private static final int SHARED_CAPACITY = 1 << 1;
+        private static final int ESTIMATED_CAPACITY = 1 << 2;
+        private static final int SHARE_PERCENT = 1 << 3;
+        private static final int DONATION_PERCENT = 1 << 4;
+        private static final int SHARE = 1 << 5;
+        private static final int MINIMUM_PAYOUT = 1 << 6;
+
+        private final long accountId;
+        // The fields set since this state was created, only read for the staged copies of a transaction
+        private int changed;
+        private volatile Miner miner;
+        private volatile SignumValue pendingBalance;
+        private volatile double sharedCapacity;
+        private volatile double estimatedCapacity;
+        private volatile int sharePercent;
+        private volatile int donationPercent;
+        private volatile double share;
+        private volatile SignumValue minimumPayout;
+
+        public MinerState(MinersRecord record) {
+            this.accountId = record.getAccountId();
+            this.pendingBalance = SignumValue.fromNQT(record.getPendingBalance() != null ? record.getPendingBalance() : 0L);
+            this.sharedCapacity = record.getSharedCapacity() != null ? record.getSharedCapacity() : 0d;
+            this.estimatedCapacity = record.getEstimatedCapacity() != null ? record.getEstimatedCapacity() : 0d;
+            this.sharePercent = record.getSharePercent() != null ? record.getSharePercent() : 100;
+            this.donationPercent = record.getDonationPercent() != null ? record.getDonationPercent() : 1;
+            this.share = record.getShare() != null ? record.getShare() : 0d;
+            this.minimumPayout = SignumValue.fromNQT(record.getMinimumPayout() != null ? record.getMinimumPayout() : 0L);
+        }
+
+        public MinerState(MinerState other) {
+            this.accountId = other.accountId;
+            this.miner = other.miner;
+            this.pendingBalance = other.pendingBalance;
+            this.sharedCapacity = other.sharedCapacity;
+            this.estimatedCapacity = other.estimatedCapacity;
+            this.sharePercent = other.sharePercent;
+            this.donationPercent = other.donationPercent;
+            this.share = other.share;
+            this.minimumPayout = other.minimumPayout;
+        }
+
+        /**
+         * Copies the row values the other state changed, so values written meanwhile to this one
+         * are kept. The miner is only taken if this state has none yet.
+         */
+        public void update(MinerState other) {
+            if (this.miner == null) {
+                this.miner = other.miner;
+            }
+            int otherChanged = other.changed;
+            if ((otherChanged & PENDING_BALANCE) != 0) {
+                this.pendingBalance = other.pendingBalance;
+            }
+            if ((otherChanged & SHARED_CAPACITY) != 0) {
+                this.sharedCapacity = other.sharedCapacity;
+            }
+            if ((otherChanged & ESTIMATED_CAPACITY) != 0) {
+                this.estimatedCapacity = other.estimatedCapacity;
+            }
+            if ((otherChanged & SHARE_PERCENT) != 0) {
+                this.sharePercent = other.sharePercent;
+            }
+            if ((otherChanged & DONATION_PERCENT) != 0) {
+                this.donationPercent = other.donationPercent;
+            }
+            if ((otherChanged & SHARE) != 0) {
+                this.share = other.share;
+            }
+            if ((otherChanged & MINIMUM_PAYOUT) != 0) {
+                this.minimumPayout = other.minimumPayout;
+            }
+        }
+
+        public long getAccountId() {
+            return accountId;
+        }
+
+        public Miner getMiner() {
+            return miner;
+        }
+
+        public void setMiner(Miner miner) {
+            this.miner = miner;
+        }
+
+        public SignumValue getPendingBalance() {
+            return pendingBalance;
+        }
+
+        public void setPendingBalance(SignumValue pendingBalance) {
+            this.pendingBalance = pendingBalance;
+            changed |= PENDING_BALANCE;
+        }
+
+        public double getSharedCapacity() {
+            return sharedCapacity;
+        }
+
+        public void setSharedCapacity(double sharedCapacity) {
+            this.sharedCapacity = sharedCapacity;
+            changed |= SHARED_CAPACITY;
+        }
+
+        public double getEstimatedCapacity() {
+            return estimatedCapacity;
+        }
+
+        public void setEstimatedCapacity(double estimatedCapacity) {
+            this.estimatedCapacity = estimatedCapacity;
+            changed |= ESTIMATED_CAPACITY;
+        }
+
+        public int getSharePercent() {
+            return sharePercent;
+        }
+
+        public void setSharePercent(int sharePercent) {
+            this.sharePercent = sharePercent;
+            changed |= SHARE_PERCENT;
+        }
+
+        public int getDonationPercent() {
+            return donationPercent;
+        }
+
+        public void setDonationPercent(int donationPercent) {
+            this.donationPercent = donationPercent;
+            changed |= DONATION_PERCENT;
+        }
+
+        public double getShare() {
+            return share;
+        }
+
+        public void setShare(double share) {
+            this.share = share;
+            changed |= SHARE;
+        }
+
+        public SignumValue getMinimumPayout() {
+            return minimumPayout;
+        }
+
+        public void setMinimumPayout(SignumValue minimumPayout) {
+            this.minimumPayout = minimumPayout;
+            changed |= MINIMUM_PAYOUT;
+        }
+    }
+}
@@ -1,9 +1,11 @@
 package burst.pool.storage.persistent;
 
 import signumj.entity.SignumAddress;
+import burst.pool.entity.MinerCommand;
 import burst.pool.entity.Payout;
 import burst.pool.entity.WonBlock;
 import burst.pool.miners.Miner;
+import burst.pool.miners.MinerCapacity;
 import burst.pool.miners.PoolFeeRecipient;
 import burst.pool.pool.StoredSubmission;
 
@@ -20,6 +22,7 @@ public interface StorageService extends AutoCloseable {
     List<Miner> getMinersFiltered();
     Miner getMiner(SignumAddress address);
     Miner newMiner(SignumAddress address);
+    void updateMinerCapacities(List<MinerCapacity> capacities, double poolCapacity);
 
     PoolFeeRecipient getPoolFeeRecipient();
     PoolFeeRecipient getPoolDonationRecipient();
@@ -27,9 +30,20 @@ public interface StorageService extends AutoCloseable {
     int getLastProcessedBlock();
     void incrementLastProcessedBlock();
 
+    /**
+     * @return the height up to which miner commands were applied, or -1 if none were yet
+     */
+    int getLastCommandHeight();
+    void setLastCommandHeight(int height);
+    void addMinerCommand(MinerCommand command);
+
     Map<Long, List<StoredSubmission>> getBestSubmissions();
     List<StoredSubmission> getBestSubmissionsForBlock(long blockHeight);
     void addBestSubmissionForBlock(long blockHeight, StoredSubmission submission);
+    /**
+     * Writes the queued best submissions, they stay queued if this throws.
+     */
+    void flushPendingWrites();
 
     void addWonBlock(WonBlock wonBlock);
     List<WonBlock> getWonBlocks(int limit);
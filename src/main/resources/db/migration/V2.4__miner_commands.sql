@@ -0,0 +1,11 @@
+CREATE TABLE miner_commands (
+  db_id BIGINT AUTO_INCREMENT,
+  transaction_id BIGINT,
+  account_id BIGINT,
+  height INT,
+  command VARCHAR(16),
+  argument VARCHAR(64),
+  PRIMARY KEY (db_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+CREATE INDEX miner_commands_index ON miner_commands (account_id);
+CREATE UNIQUE INDEX miner_commands_transaction_index ON miner_commands (transaction_id, command);
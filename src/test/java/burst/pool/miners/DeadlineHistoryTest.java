@@ -0,0 +1,164 @@
+package burst.pool.miners;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DeadlineHistoryTest {
+    private static final int WINDOW = 10;
+    private static final int N_AVG = 6;
+
+    private DeadlineHistory deadlineHistory;
+    private int miner;
+
+    @Before
+    public void setUp() {
+        deadlineHistory = new DeadlineHistory(WINDOW, false);
+        miner = deadlineHistory.indexOf(1234L);
+    }
+
+    private static Deadline deadline(long height, long deadline) {
+        return new Deadline(deadline, 1000L + height, (int) (height % 3) * 50, height, 1d, 1d + height % 4);
+    }
+
+    @Test
+    public void wrapsAroundTheWindow() {
+        for (long height = 1; height <= 5 * WINDOW; height++) {
+            deadlineHistory.submit(miner, deadline(height, height * 7));
+            deadlineHistory.sweep(miner, height + 1 - N_AVG, height + 1);
+        }
+
+        assertEquals(WINDOW, deadlineHistory.getWindow());
+        long newest = 5 * WINDOW;
+        for (long height = newest + 1 - N_AVG; height <= newest; height++) {
+            assertEquals(height * 7, deadlineHistory.get(miner, height).getDeadline());
+        }
+        // Overwritten by the newer heights of the same slots, or dropped by the sweep
+        assertNull(deadlineHistory.get(miner, newest - WINDOW));
+        assertNull(deadlineHistory.get(miner, newest - N_AVG));
+        assertEquals(N_AVG, deadlineHistory.getDeadlines(miner).size());
+    }
+
+    @Test
+    public void keepsOnlyTheBetterDeadline() {
+        deadlineHistory.submit(miner, deadline(5, 100));
+        deadlineHistory.submit(miner, deadline(5, 200));
+        assertEquals(100, deadlineHistory.get(miner, 5).getDeadline());
+        deadlineHistory.submit(miner, deadline(5, 50));
+        assertEquals(50, deadlineHistory.get(miner, 5).getDeadline());
+        // Older than the latest height of this miner
+        deadlineHistory.submit(miner, deadline(6, 10));
+        deadlineHistory.submit(miner, deadline(4, 10));
+        assertNull(deadlineHistory.get(miner, 4));
+    }
+
+    @Test
+    public void growsWhenProcessingFallsBehind() {
+        deadlineHistory.retainFrom(1);
+        // Nothing is swept, so all heights are still needed
+        for (long height = 1; height <= 3 * WINDOW; height++) {
+            deadlineHistory.submit(miner, deadline(height, height * 7));
+        }
+
+        assertTrue(deadlineHistory.getWindow() >= 3 * WINDOW);
+        for (long height = 1; height <= 3 * WINDOW; height++) {
+            assertEquals(height * 7, deadlineHistory.get(miner, height).getDeadline());
+        }
+        assertEquals(3 * WINDOW, deadlineHistory.getDeadlines(miner).size());
+    }
+
+    @Test
+    public void compactsOnceProcessingCaughtUp() {
+        deadlineHistory.retainFrom(1);
+        for (long height = 1; height <= 3 * WINDOW; height++) {
+            deadlineHistory.submit(miner, deadline(height, height * 7));
+        }
+        assertTrue(deadlineHistory.getWindow() > WINDOW);
+
+        // Still more needed heights than the configured window
+        deadlineHistory.sweep(miner, WINDOW, 3 * WINDOW + 1);
+        assertTrue(deadlineHistory.getWindow() > WINDOW);
+
+        long fromHeight = 3 * WINDOW + 1 - N_AVG;
+        DeadlineHistory.HitSums sums = deadlineHistory.sweep(miner, fromHeight, 3 * WINDOW + 1);
+        assertEquals(WINDOW, deadlineHistory.getWindow());
+        assertEquals(N_AVG, sums.getCount());
+        assertHitSums(fromHeight, 3 * WINDOW + 1, sums);
+        for (long height = fromHeight; height <= 3 * WINDOW; height++) {
+            assertEquals(height * 7, deadlineHistory.get(miner, height).getDeadline());
+        }
+        assertNull(deadlineHistory.get(miner, fromHeight - 1));
+
+        // And keeps wrapping around in the configured window
+        for (long height = 3 * WINDOW + 1; height <= 5 * WINDOW; height++) {
+            deadlineHistory.submit(miner, deadline(height, height * 7));
+            deadlineHistory.sweep(miner, height + 1 - N_AVG, height + 1);
+        }
+        assertEquals(WINDOW, deadlineHistory.getWindow());
+        assertEquals(N_AVG, deadlineHistory.getDeadlines(miner).size());
+    }
+
+    @Test
+    public void compactsWhenSkippedBlocksMoveTheRetainedHeight() {
+        deadlineHistory.retainFrom(1);
+        for (long height = 1; height <= 3 * WINDOW; height++) {
+            deadlineHistory.submit(miner, deadline(height, height * 7));
+        }
+        assertTrue(deadlineHistory.getWindow() > WINDOW);
+
+        // Blocks without submissions are skipped without sweeping
+        deadlineHistory.retainFrom(3 * WINDOW + 1 - N_AVG);
+        assertEquals(WINDOW, deadlineHistory.getWindow());
+        assertEquals(N_AVG, deadlineHistory.getDeadlines(miner).size());
+        assertHitSums(3 * WINDOW + 1 - N_AVG, 3 * WINDOW + 1, deadlineHistory.sweep(miner, 3 * WINDOW + 1 - N_AVG, 3 * WINDOW + 1));
+    }
+
+    @Test
+    public void slidingSumsMatchTheRecalculatedOnes() {
+        Random random = new Random(42);
+        // More sweeps than the window, so the sums are also recalculated in between
+        for (long height = 1; height <= 20 * WINDOW; height++) {
+            if (random.nextInt(4) != 0) {
+                deadlineHistory.submit(miner, deadline(height, random.nextInt(1_000_000) + 1));
+            }
+            // Sometimes the processing skips a few blocks
+            long processed = height - 2 - random.nextInt(2);
+            long fromHeight = processed - N_AVG;
+            DeadlineHistory.HitSums sums = deadlineHistory.sweep(miner, fromHeight, height);
+            assertHitSums(fromHeight, height, sums);
+        }
+    }
+
+    private void assertHitSums(long fromHeight, long toHeight, DeadlineHistory.HitSums sums) {
+        int count = 0;
+        int sharedCount = 0;
+        double hitSum = 0d;
+        double hitSumBoost = 0d;
+        double hitSumShared = 0d;
+        List<Deadline> deadlines = deadlineHistory.getDeadlines(miner);
+        for (Deadline deadline : deadlines) {
+            if (deadline.getHeight() < fromHeight || deadline.getHeight() >= toHeight) {
+                continue;
+            }
+            double hit = deadline.calculateHit();
+            count++;
+            hitSum += hit;
+            hitSumBoost += hit / deadline.getBoostPool();
+            if (deadline.getSharePercent() > 0) {
+                sharedCount++;
+                hitSumShared += hit / deadline.getBoostPool() * 100.0 / deadline.getSharePercent();
+            }
+        }
+        assertEquals(count, sums.getCount());
+        assertEquals(sharedCount, sums.getSharedCount());
+        assertEquals(hitSum, sums.getHitSum(), 1e-9 * hitSum);
+        assertEquals(hitSumBoost, sums.getHitSumBoost(), 1e-9 * hitSumBoost);
+        assertEquals(hitSumShared, sums.getHitSumShared(), 1e-9 * hitSumShared);
+    }
+}
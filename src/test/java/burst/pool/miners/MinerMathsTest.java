@@ -0,0 +1,66 @@
+package burst.pool.miners;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class MinerMathsTest {
+    private static final int N_AVG = 360;
+    private static final int PROCESS_LAG = 10;
+    private static final int MINERS = 10_000;
+
+    private MinerMaths minerMaths;
+    private int[] nConfs;
+    private double[] hitSums;
+
+    @Before
+    public void setUp() {
+        minerMaths = new MinerMaths(N_AVG + PROCESS_LAG, 1, 2);
+        nConfs = new int[MINERS];
+        hitSums = new double[MINERS];
+        Random random = new Random(42);
+        for (int i = 0; i < MINERS; i++) {
+            // Beyond the alphas too, and with zero hit sums as for miners without deadlines
+            nConfs[i] = random.nextInt(N_AVG + PROCESS_LAG + 10);
+            hitSums[i] = i % 100 == 0 ? 0d : nConfs[i] * (double) (random.nextInt(50_000_000) + 1) * (random.nextInt(86_400) + 1);
+        }
+    }
+
+    @Test
+    public void estimatedTotalPlotSizesMatchesPerMiner() {
+        double[] plotSizes = new double[MINERS];
+        minerMaths.estimatedTotalPlotSizes(nConfs, hitSums, plotSizes);
+        for (int i = 0; i < MINERS; i++) {
+            assertEquals("nConf " + nConfs[i] + ", hitSum " + hitSums[i],
+                    minerMaths.estimatedTotalPlotSize(nConfs[i], hitSums[i]), plotSizes[i], 0d);
+        }
+    }
+
+    @Test
+    public void estimatedEffectivePlotSizesMatchesPerMiner() {
+        double[] plotSizes = new double[MINERS];
+        minerMaths.estimatedEffectivePlotSizes(nConfs, hitSums, plotSizes);
+        for (int i = 0; i < MINERS; i++) {
+            assertEquals("nConf " + nConfs[i] + ", hitSum " + hitSums[i],
+                    minerMaths.estimatedEffectivePlotSize(nConfs[i], hitSums[i]), plotSizes[i], 0d);
+        }
+    }
+
+    @Test
+    public void impossiblePlotSizesAreZero() {
+        int[] nConfs = {0, 1, 5};
+        double[] hitSums = {0d, 0d, 0d};
+        double[] plotSizes = new double[nConfs.length];
+        minerMaths.estimatedTotalPlotSizes(nConfs, hitSums, plotSizes);
+        for (double plotSize : plotSizes) {
+            assertEquals(0d, plotSize, 0d);
+        }
+        minerMaths.estimatedEffectivePlotSizes(nConfs, hitSums, plotSizes);
+        for (double plotSize : plotSizes) {
+            assertEquals(0d, plotSize, 0d);
+        }
+    }
+}